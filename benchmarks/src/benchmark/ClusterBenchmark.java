@@ -0,0 +1,178 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import client.MessagingSession;
+import shared.models.communication.RequestType;
+import shared.models.communication.Response;
+import shared.models.data.Credentials;
+import shared.models.generics.Pair;
+
+
+// Usage: ClusterBenchmark [maxNodes] [subscribersPerNode] [publishersPerNode] [seconds] [window] [basePort]
+public class ClusterBenchmark {
+
+    private static final String TOPIC = "bench/cluster";
+    private static final String PROBE = "probe";
+
+    private record Node(Process process, InetSocketAddress address) {}
+
+    public static void main(String[] args) throws Exception {
+        var maxNodes = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        var subscribers = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        var publishers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        var seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        var window = args.length > 4 ? Integer.parseInt(args[4]) : 16;
+        var basePort = args.length > 5 ? Integer.parseInt(args[5]) : 47500;
+
+        System.out.printf(
+          "subscribers/node=%d publishers/node=%d seconds=%d window=%d%n", subscribers, publishers, seconds, window
+        );
+        System.out.printf("%-6s %14s %16s %20s%n", "nodes", "publishes/s", "deliveries/s", "deliveries/s/node");
+        for (var nodes = 1; nodes <= maxNodes; nodes++) {
+            var cluster = launch(nodes, basePort);
+            try {
+                run(cluster, subscribers, publishers, seconds, window);
+            } finally {
+                for (var node : cluster)
+                    stop(node.process());
+            }
+            basePort += 2 * maxNodes;
+        }
+    }
+
+    // Node i serves clients on basePort + i and links with the others on basePort + nodes + i
+    private static List<Node> launch(int nodes, int basePort) throws IOException {
+        var java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        var cluster = new ArrayList<Node>();
+        for (var i = 0; i < nodes; i++) {
+            var self = i;
+            var peers = IntStream.range(0, nodes)
+              .filter(peer -> peer != self)
+              .mapToObj(peer -> "localhost:" + (basePort + nodes + peer))
+              .collect(Collectors.joining(","));
+            var process = new ProcessBuilder(
+              java, "-cp", System.getProperty("java.class.path"),
+              "-Dmessaging.logDirectory=", "-Dmessaging.consoleLevel=Error", "-Dmessaging.jmx=false",
+              "-Dmessaging.clusterPort=" + (basePort + nodes + i), "-Dmessaging.clusterPeers=" + peers,
+              "benchmark.ClusterNode", String.valueOf(basePort + i)
+            ).redirectOutput(ProcessBuilder.Redirect.DISCARD).redirectErrorStream(true).start();
+            cluster.add(new Node(process, new InetSocketAddress(InetAddress.getLocalHost(), basePort + i)));
+        }
+        return cluster;
+    }
+
+    private static void stop(Process process) throws InterruptedException {
+        try {
+            process.getOutputStream().close();
+        } catch (IOException ignored) {}
+        if (!process.waitFor(5, TimeUnit.SECONDS))
+            process.destroyForcibly().waitFor();
+    }
+
+    private static MessagingSession connect(InetSocketAddress address) throws Exception {
+        var deadline = System.currentTimeMillis() + 15_000;
+        for (;;)
+            try {
+                return MessagingSession.connect(address);
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) throw e;
+                Thread.sleep(100);
+            }
+    }
+
+    private static void run(
+      List<Node> cluster, int subscriberCount, int publisherCount, int seconds, int window
+    ) throws Exception {
+        var prefix = Long.toString(System.nanoTime(), 36);
+        var sessions = new ArrayList<MessagingSession>();
+        var deliveries = new AtomicLong();
+        // Publishers of the probes every subscriber has heard from, one per node
+        var heard = new ArrayList<Set<String>>();
+        var publishers = new ArrayList<MessagingSession>();
+        var pending = new ArrayList<CompletableFuture<Response>>();
+        try {
+            for (var n = 0; n < cluster.size(); n++) {
+                var address = cluster.get(n).address();
+                for (var i = 0; i < subscriberCount; i++) {
+                    var subscriber = connect(address);
+                    var origins = ConcurrentHashMap.<String>newKeySet();
+                    subscriber.onPublication(delivery -> {
+                        if (PROBE.equals(delivery.body())) origins.add(delivery.author());
+                        else deliveries.incrementAndGet();
+                    });
+                    pending.add(subscriber.send(RequestType.Register, Credentials.fromHash(prefix + "-s" + n + '-' + i, "")));
+                    pending.add(subscriber.send(RequestType.Subscribe, TOPIC));
+                    sessions.add(subscriber);
+                    heard.add(origins);
+                }
+                for (var i = 0; i < publisherCount; i++) {
+                    var publisher = connect(address);
+                    pending.add(publisher.send(RequestType.Register, Credentials.fromHash(prefix + "-p" + n + '-' + i, "")));
+                    sessions.add(publisher);
+                    publishers.add(publisher);
+                }
+            }
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).get();
+
+            // Interest travels asynchronously, probes from the first publisher of every node show it arrived
+            var probes = new ArrayList<MessagingSession>();
+            for (var n = 0; n < cluster.size(); n++)
+                probes.add(publishers.get(n * publisherCount));
+            var deadline = System.currentTimeMillis() + 15_000;
+            while (heard.stream().anyMatch(origins -> origins.size() < cluster.size())) {
+                if (System.currentTimeMillis() > deadline)
+                    throw new IllegalStateException("Cluster of " + cluster.size() + " nodes did not link up");
+                for (var probe : probes)
+                    probe.send(RequestType.Publish, new Pair<>(TOPIC, PROBE));
+                Thread.sleep(200);
+            }
+
+            var published = new AtomicLong();
+            var end = System.nanoTime() + seconds * 1_000_000_000L;
+            var threads = new ArrayList<Thread>();
+            for (var publisher : publishers)
+                threads.add(Thread.ofPlatform().start(() -> {
+                    var inFlight = new Semaphore(window);
+                    var body = "x".repeat(64);
+                    try {
+                        while (System.nanoTime() < end) {
+                            inFlight.acquire();
+                            publisher.send(RequestType.Publish, new Pair<>(TOPIC, body)).whenComplete((response, e) -> {
+                                inFlight.release();
+                                if (e == null) published.incrementAndGet();
+                            });
+                        }
+                        inFlight.acquire(window);
+                    } catch (InterruptedException ignored) {}
+                }));
+            var start = System.nanoTime();
+            var deliveredBefore = deliveries.get();
+            for (var thread : threads)
+                thread.join();
+            var elapsed = (System.nanoTime() - start) / 1e9;
+            var delivered = deliveries.get() - deliveredBefore;
+            System.out.printf(
+              "%-6d %14.0f %16.0f %20.0f%n",
+              cluster.size(), published.get() / elapsed, delivered / elapsed, delivered / elapsed / cluster.size()
+            );
+        } finally {
+            for (var session : sessions)
+                session.close();
+        }
+    }
+
+}
@@ -0,0 +1,22 @@
+package benchmark;
+
+import java.io.OutputStream;
+
+import server.MessagingServer;
+import server.ServerMode;
+
+
+// Usage: ClusterNode [port], a selector mode server that stops once its standard input is closed,
+// cluster settings come from the messaging.clusterPort and messaging.clusterPeers properties
+public class ClusterNode {
+
+    public static void main(String[] args) throws Exception {
+        var port = args.length > 0 ? Integer.parseInt(args[0]) : 47123;
+        var server = new MessagingServer();
+        server.start(new int[]{port}, ServerMode.Selector);
+        System.in.transferTo(OutputStream.nullOutputStream());
+        server.stop();
+        System.exit(0);
+    }
+
+}
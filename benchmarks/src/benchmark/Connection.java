@@ -0,0 +1,55 @@
+package benchmark;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+
+import shared.models.communication.TransmissionBuffer;
+
+
+public class Connection {
+
+    public final SocketChannel channel;
+    public final TransmissionBuffer buffer = TransmissionBuffer.allocate();
+    public final SelectionKey key;
+    public int outstanding = 0;
+
+    private Connection(SocketChannel channel, Selector selector) throws IOException {
+        this.channel = channel;
+        channel.configureBlocking(false);
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    public static Connection open(InetSocketAddress address, Selector selector) throws IOException {
+        var channel = SocketChannel.open(address);
+        channel.socket().setTcpNoDelay(true);
+        return new Connection(channel, selector);
+    }
+
+    public void send(Object request) throws IOException {
+        buffer.storeObject(request);
+        flush();
+    }
+
+    public void flush() throws IOException {
+        if (buffer.write(channel))
+            key.interestOpsOr(SelectionKey.OP_WRITE);
+        else
+            key.interestOps(SelectionKey.OP_READ);
+    }
+
+    public ArrayList<Object> receive() throws IOException {
+        buffer.read(channel);
+        return buffer.retrieveObjects();
+    }
+
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+
+}
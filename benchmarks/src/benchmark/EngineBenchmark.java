@@ -0,0 +1,141 @@
+package benchmark;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+
+import shared.models.communication.Request;
+import shared.models.communication.RequestType;
+import shared.models.communication.Response;
+import shared.models.communication.ResponseType;
+import shared.models.data.Credentials;
+import shared.models.data.Delivery;
+import shared.models.generics.Pair;
+
+import server.MessagingServer;
+import server.ServerMode;
+
+
+// Usage: EngineBenchmark [idleConnections] [hotSubscribers] [publishers] [seconds] [window] [port]
+public class EngineBenchmark {
+
+    private static final String HOT_TOPIC = "bench/hot";
+
+    public static void main(String[] args) throws Exception {
+        // Measures the engines, not the disk, unless a log directory is given explicitly
+        if (System.getProperty("messaging.logDirectory") == null)
+            System.setProperty("messaging.logDirectory", "");
+        var idle = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        var hot = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        var publishers = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        var seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        var window = args.length > 4 ? Integer.parseInt(args[4]) : 16;
+        var port = args.length > 5 ? Integer.parseInt(args[5]) : 47200;
+
+        var console = System.out;
+        console.printf(
+          "idle=%d hot=%d publishers=%d seconds=%d window=%d%n", idle, hot, publishers, seconds, window
+        );
+        for (var mode : ServerMode.values()) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            var server = new MessagingServer();
+            try {
+                server.start(new int[]{port}, mode);
+                console.println(mode + ": " + run(port, idle, hot, publishers, seconds, window));
+            } finally {
+                server.stop();
+                System.setOut(console);
+            }
+            port++;
+        }
+    }
+
+    private static String run(
+      int port, int idle, int hot, int publisherCount, int seconds, int window
+    ) throws Exception {
+        var address = new InetSocketAddress(InetAddress.getLocalHost(), port);
+        var selector = Selector.open();
+        var connections = new ArrayList<Connection>();
+        try {
+            for (var i = 0; i < idle; i++)
+                connections.add(Connection.open(address, selector));
+
+            var publishers = new ArrayList<Connection>();
+            for (var i = 0; i < publisherCount; i++) {
+                var publisher = Connection.open(address, selector);
+                publisher.send(new Request(RequestType.Register, Credentials.fromHash("publisher" + i, "")));
+                publishers.add(publisher);
+                connections.add(publisher);
+            }
+            publishers.get(0).send(new Request(RequestType.Publish, new Pair<>(HOT_TOPIC, "0")));
+            await(selector, 500);
+
+            for (var i = 0; i < hot; i++) {
+                var subscriber = Connection.open(address, selector);
+                subscriber.send(new Request(RequestType.Register, Credentials.fromHash("subscriber" + i, "")));
+                subscriber.send(new Request(RequestType.Subscribe, HOT_TOPIC));
+                connections.add(subscriber);
+            }
+            await(selector, 1000);
+
+            var latencies = new Latencies(1 << 20);
+            long deliveries = 0, published = 0;
+            var warmupEnd = System.nanoTime() + 2_000_000_000L;
+            var end = warmupEnd + seconds * 1_000_000_000L;
+            for (long now; (now = System.nanoTime()) < end; ) {
+                var measuring = now >= warmupEnd;
+                for (var publisher : publishers)
+                    while (publisher.outstanding < window) {
+                        publisher.buffer.storeObject(
+                          new Request(RequestType.Publish, new Pair<>(HOT_TOPIC, Long.toString(System.nanoTime())))
+                        );
+                        publisher.outstanding++;
+                        if (measuring) published++;
+                    }
+                for (var publisher : publishers)
+                    publisher.flush();
+                selector.select(1);
+                for (var key : selector.selectedKeys()) {
+                    var connection = (Connection) key.attachment();
+                    if (key.isValid() && key.isWritable())
+                        connection.flush();
+                    if (!key.isValid() || !key.isReadable()) continue;
+                    for (var obj : connection.receive()) {
+                        var response = (Response) obj;
+                        if (response.getType() == ResponseType.PublishedMessage)
+                            connection.outstanding--;
+                        else if (response.getType() == ResponseType.NewPublication && measuring) {
+                            var sentAt = Long.parseLong(((Delivery) response.getPayload()).body());
+                            latencies.record(System.nanoTime() - sentAt);
+                            deliveries++;
+                        }
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+            return String.format(
+              "publishes/s=%.0f deliveries/s=%.0f latency %s",
+              published / (double) seconds, deliveries / (double) seconds, latencies.summary()
+            );
+        } finally {
+            for (var connection : connections)
+                connection.close();
+            selector.close();
+        }
+    }
+
+    private static void await(Selector selector, long millis) throws Exception {
+        var end = System.currentTimeMillis() + millis;
+        while (System.currentTimeMillis() < end) {
+            selector.select(10);
+            for (var key : selector.selectedKeys())
+                if (key.isValid() && key.isReadable())
+                    ((Connection) key.attachment()).receive();
+            selector.selectedKeys().clear();
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package benchmark;
+
+import shared.codec.BinaryCodec;
+import shared.codec.FrameCodec;
+import shared.codec.SerializationCodec;
+import shared.models.communication.Response;
+import shared.models.communication.ResponseType;
+import shared.models.data.Credentials;
+import shared.models.data.Delivery;
+import shared.models.data.Post;
+import shared.models.data.Topic;
+import shared.models.data.User;
+
+
+// Usage: FrameSizeBenchmark [maxHistory] [subscribers]
+public class FrameSizeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        var maxHistory = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        var subscriberCount = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        var topic = new Topic("bench/history");
+        topic.assignAlias(0);
+        var author = new User(Credentials.fromHash("author", "0".repeat(64)));
+        for (var i = 0; i < subscriberCount; i++) {
+            var subscriber = new User(Credentials.fromHash("subscriber" + i, "0".repeat(64)));
+            subscriber.addSubscription(topic);
+            topic.addSubscriber(subscriber);
+        }
+
+        System.out.printf("subscribers=%d%n", subscriberCount);
+        System.out.printf(
+          "%10s %18s %18s %18s %18s %18s%n", "history", "binary Post", "binary Delivery", "binary aliased",
+          "serialized Post", "serialized Delivery"
+        );
+        for (var history = 0; history <= maxHistory; history = history == 0 ? 10 : history * 10) {
+            while (topic.nextOffset() < history)
+                topic.addMessage(new Post(topic, "message " + topic.nextOffset(), author));
+            var post = new Post(topic, "the latest message", author);
+            topic.addMessage(post);
+            System.out.printf(
+              "%10d %18s %18s %18s %18s %18s%n", history,
+              measure(BinaryCodec.INSTANCE, post), measure(BinaryCodec.INSTANCE, Delivery.of(post)),
+              measure(BinaryCodec.INSTANCE, Delivery.aliased(post)),
+              measure(SerializationCodec.INSTANCE, post), measure(SerializationCodec.INSTANCE, Delivery.of(post))
+            );
+        }
+    }
+
+    // Frame size in bytes and mean encoding time
+    private static String measure(FrameCodec codec, Object payload) throws Exception {
+        var response = new Response(ResponseType.NewPublication, payload);
+        var size = codec.encode(response).remaining();
+        var iterations = 0;
+        var start = System.nanoTime();
+        long elapsed;
+        do {
+            codec.encode(response);
+            iterations++;
+        } while ((elapsed = System.nanoTime() - start) < 50_000_000L);
+        return String.format("%dB %.1fus", size, elapsed / 1000.0 / iterations);
+    }
+
+}
@@ -0,0 +1,46 @@
+package benchmark;
+
+import java.util.Arrays;
+
+
+public class Latencies {
+
+    private long[] samples;
+    private int size = 0;
+
+    public Latencies(int expected) {
+        samples = new long[Math.max(expected, 16)];
+    }
+
+    public void record(long nanos) {
+        if (size == samples.length)
+            samples = Arrays.copyOf(samples, size * 2);
+        samples[size++] = nanos;
+    }
+
+    public void addAll(Latencies other) {
+        for (var i = 0; i < other.size; i++)
+            record(other.samples[i]);
+    }
+
+    public int count() {
+        return size;
+    }
+
+    public double percentileMicros(double percentile) {
+        if (size == 0) return 0;
+        var sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        var index = (int) Math.ceil(percentile / 100 * size) - 1;
+        return sorted[Math.max(0, Math.min(index, size - 1))] / 1_000.0;
+    }
+
+    public String summary() {
+        return String.format(
+          "n=%d p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+          size, percentileMicros(50), percentileMicros(90), percentileMicros(99),
+          percentileMicros(99.9), percentileMicros(100)
+        );
+    }
+
+}
@@ -0,0 +1,426 @@
+package benchmark;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import shared.models.communication.Request;
+import shared.models.communication.RequestType;
+import shared.models.communication.Response;
+import shared.models.communication.ResponseType;
+import shared.models.data.Credentials;
+import shared.models.data.Delivery;
+import shared.models.data.Session;
+import shared.models.generics.Pair;
+
+
+// Usage: LoadGenerator [-host address] [-port port] [-c connections] [-threads threads] [-topics topics]
+//   [-dist uniform|zipf] [-zipf exponent] [-subs subscriptionsPerConnection] [-publishers publishers]
+//   [-rate publishesPerSecond] [-warmup seconds] [-d seconds] [-user prefix] [-reconnect none|login|resume]
+public class LoadGenerator {
+
+    // Bodies carry the run and the intended send time, deliveries of earlier runs are not measured
+    private static final String RUN = Long.toString(System.currentTimeMillis(), 36);
+    private static final int MAX_OUTSTANDING = 1024;
+
+    private final InetSocketAddress address;
+    private final int connectionCount, threadCount, subscriptions, publisherCount;
+    private final double rate;
+    private final String userPrefix;
+    private final String reconnect;
+    private final TopicDistribution topics;
+
+    private final AtomicInteger ready = new AtomicInteger(0);
+    private final LongAdder published = new LongAdder(), acknowledged = new LongAdder(),
+      delivered = new LongAdder(), missed = new LongAdder(), shed = new LongAdder(), failed = new LongAdder(),
+      reconnected = new LongAdder();
+    private volatile long startAt = Long.MAX_VALUE, measureFrom = Long.MAX_VALUE;
+    private volatile boolean isRunning = true, isReconnecting = false;
+
+    // Topic i is chosen with a probability proportional to 1 / (i + 1)^exponent, 0 is uniform
+    private static class TopicDistribution {
+
+        private final String[] titles;
+        private final double[] cumulative;
+
+        TopicDistribution(int count, double exponent) {
+            titles = new String[count];
+            cumulative = new double[count];
+            var total = 0.0;
+            for (var i = 0; i < count; i++) {
+                titles[i] = "load/" + i;
+                total += 1 / Math.pow(i + 1, exponent);
+                cumulative[i] = total;
+            }
+            for (var i = 0; i < count; i++)
+                cumulative[i] /= total;
+        }
+
+        String sample() {
+            var index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+            return titles[Math.min(index < 0 ? -index - 1 : index, titles.length - 1)];
+        }
+
+        int size() {
+            return titles.length;
+        }
+
+    }
+
+    private LoadGenerator(
+      InetSocketAddress address, int connections, int threads, TopicDistribution topics, int subscriptions,
+      int publishers, double rate, String userPrefix, String reconnect
+    ) {
+        this.address = address;
+        this.connectionCount = connections;
+        this.threadCount = threads;
+        this.topics = topics;
+        this.subscriptions = Math.min(subscriptions, topics.size());
+        this.publisherCount = Math.min(publishers, connections);
+        this.rate = rate;
+        this.userPrefix = userPrefix;
+        this.reconnect = reconnect;
+    }
+
+    public static void main(String[] args) throws Exception {
+        var host = "127.0.0.1";
+        int port = 47123, connections = 1000, threads = 4, topicCount = 100, subscriptions = 1, publishers = 10;
+        var distribution = "uniform";
+        double exponent = 1.0, rate = 1000;
+        int warmup = 2, seconds = 10;
+        var userPrefix = "load";
+        var reconnect = "none";
+        for (var i = 0; i + 1 < args.length; i += 2)
+            switch (args[i]) {
+                case "-host" -> host = args[i + 1];
+                case "-port" -> port = Integer.parseInt(args[i + 1]);
+                case "-c" -> connections = Integer.parseInt(args[i + 1]);
+                case "-threads" -> threads = Integer.parseInt(args[i + 1]);
+                case "-topics" -> topicCount = Integer.parseInt(args[i + 1]);
+                case "-dist" -> distribution = args[i + 1];
+                case "-zipf" -> exponent = Double.parseDouble(args[i + 1]);
+                case "-subs" -> subscriptions = Integer.parseInt(args[i + 1]);
+                case "-publishers" -> publishers = Integer.parseInt(args[i + 1]);
+                case "-rate" -> rate = Double.parseDouble(args[i + 1]);
+                case "-warmup" -> warmup = Integer.parseInt(args[i + 1]);
+                case "-d" -> seconds = Integer.parseInt(args[i + 1]);
+                case "-user" -> userPrefix = args[i + 1];
+                case "-reconnect" -> reconnect = args[i + 1];
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        var topics = switch (distribution) {
+            case "uniform" -> new TopicDistribution(topicCount, 0);
+            case "zipf" -> new TopicDistribution(topicCount, exponent);
+            default -> throw new IllegalArgumentException("Unknown distribution " + distribution);
+        };
+        System.out.printf(
+          "connections=%d threads=%d topics=%d dist=%s subscriptions/connection=%d publishers=%d rate=%.0f/s%n",
+          connections, threads, topicCount, distribution.equals("zipf") ? "zipf(" + exponent + ")" : distribution,
+          subscriptions, publishers, rate
+        );
+        if (!List.of("none", "login", "resume").contains(reconnect))
+            throw new IllegalArgumentException("Unknown reconnect mode " + reconnect);
+        new LoadGenerator(
+          new InetSocketAddress(host, port), connections, threads, topics, subscriptions, publishers, rate, userPrefix,
+          reconnect
+        ).run(warmup, seconds);
+    }
+
+    private void run(int warmup, int seconds) throws Exception {
+        createTopics();
+        var workers = new ArrayList<Worker>(threadCount);
+        for (var i = 0; i < threadCount; i++) {
+            var worker = new Worker(i);
+            workers.add(worker);
+            worker.thread.start();
+        }
+
+        var setupDeadline = System.currentTimeMillis() + 60_000;
+        while (ready.get() < connectionCount && System.currentTimeMillis() < setupDeadline && failed.sum() == 0)
+            Thread.sleep(100);
+        System.out.printf("%d of %d connections ready, %d failed%n", ready.get(), connectionCount, failed.sum());
+
+        startAt = System.nanoTime();
+        measureFrom = startAt + warmup * 1_000_000_000L;
+        long lastPublished = 0, lastDelivered = 0;
+        for (var second = 1; second <= warmup + seconds; second++) {
+            Thread.sleep(1000);
+            long publishedNow = published.sum(), deliveredNow = delivered.sum();
+            System.out.printf(
+              "%s %3ds publishes/s=%d deliveries/s=%d outstanding=%d%n",
+              second <= warmup ? "warmup" : "      ", second, publishedNow - lastPublished,
+              deliveredNow - lastDelivered, publishedNow - acknowledged.sum()
+            );
+            lastPublished = publishedNow;
+            lastDelivered = deliveredNow;
+        }
+        // Every worker drops and reopens its connections right away, as after a network blip
+        isReconnecting = !reconnect.equals("none");
+        var reconnectFrom = System.nanoTime();
+        isRunning = false;
+        var latencies = new Latencies(1 << 16);
+        long measuredPublishes = 0, measuredDeliveries = 0;
+        for (var worker : workers) {
+            worker.thread.join();
+            latencies.addAll(worker.latencies);
+            measuredPublishes += worker.measuredPublishes;
+            measuredDeliveries += worker.latencies.count();
+        }
+        System.out.printf(
+          "publishes/s=%.0f deliveries/s=%.0f missed=%d shed=%d failed=%d%n",
+          measuredPublishes / (double) seconds, measuredDeliveries / (double) seconds,
+          missed.sum(), shed.sum(), failed.sum()
+        );
+        System.out.println("publish to delivery " + latencies.summary());
+        if (isReconnecting) {
+            var finishedAt = workers.stream().mapToLong(worker -> worker.reconnectedAt).max().orElse(reconnectFrom);
+            var millis = (finishedAt - reconnectFrom) / 1e6;
+            System.out.printf(
+              "reconnected %d of %d connections with %s in %.0f ms (%.0f/s)%n",
+              reconnected.sum(), connectionCount, reconnect, millis, reconnected.sum() * 1000 / Math.max(millis, 1)
+            );
+        }
+    }
+
+    // Subscriptions are only accepted for topics that already exist
+    private void createTopics() throws IOException {
+        try (var selector = Selector.open()) {
+            var seed = Connection.open(address, selector);
+            var responses = new ArrayDeque<Response>();
+            try {
+                seed.send(authenticate(userPrefix + "-seed", RequestType.Register));
+                if (next(selector, seed, responses).getType() == ResponseType.UsernameTaken) {
+                    seed.send(authenticate(userPrefix + "-seed", RequestType.Login));
+                    if (next(selector, seed, responses).getType() != ResponseType.AuthorizationSuccess)
+                        throw new IOException("Seed user " + userPrefix + "-seed could not log in");
+                }
+                for (var title : topics.titles)
+                    seed.buffer.storeObject(new Request(RequestType.Publish, new Pair<>(title, "seed")));
+                seed.flush();
+                for (var i = 0; i < topics.size(); i++)
+                    next(selector, seed, responses);
+            } finally {
+                seed.close();
+            }
+        }
+    }
+
+    private static Response next(Selector selector, Connection connection, ArrayDeque<Response> responses)
+      throws IOException {
+        var deadline = System.currentTimeMillis() + 30_000;
+        while (responses.isEmpty()) {
+            if (System.currentTimeMillis() > deadline)
+                throw new IOException("No response from the server within 30 seconds");
+            selector.select(100);
+            if (connection.key.isValid() && connection.key.isWritable())
+                connection.flush();
+            if (connection.key.isValid() && connection.key.isReadable())
+                for (var obj : connection.receive())
+                    responses.add((Response) obj);
+            selector.selectedKeys().clear();
+        }
+        return responses.poll();
+    }
+
+    private static Request authenticate(String username, RequestType type) {
+        return new Request(type, new Credentials(username, username));
+    }
+
+    private class Worker implements Runnable {
+
+        private final Thread thread;
+        private final int index;
+        private final Latencies latencies = new Latencies(1 << 16);
+        private final HashMap<Connection, String> usernames = new HashMap<>();
+        private final HashMap<String, String> tokens = new HashMap<>();
+        private final HashMap<Connection, Integer> pendingSubscriptions = new HashMap<>();
+        private final ArrayList<Connection> publishers = new ArrayList<>();
+        private long measuredPublishes = 0;
+        private int reconnectedHere = 0;
+        private volatile long reconnectedAt = 0;
+
+        Worker(int index) {
+            this.index = index;
+            thread = new Thread(this, "load-" + index);
+        }
+
+        @Override
+        public void run() {
+            try (var selector = Selector.open()) {
+                try {
+                    for (var i = index; i < connectionCount; i += threadCount) {
+                        var connection = Connection.open(address, selector);
+                        usernames.put(connection, userPrefix + '-' + i);
+                        if (i < publisherCount)
+                            publishers.add(connection);
+                        connection.send(authenticate(userPrefix + '-' + i, RequestType.Register));
+                    }
+                    loop(selector);
+                    if (isReconnecting)
+                        reconnect(selector);
+                } finally {
+                    for (var connection : usernames.keySet())
+                        connection.close();
+                }
+            } catch (IOException e) {
+                failed.increment();
+                System.err.println(thread.getName() + ": " + e);
+            }
+        }
+
+        private void loop(Selector selector) throws IOException {
+            var share = publisherCount == 0 ? 0 : rate * publishers.size() / publisherCount;
+            var interval = share > 0 ? (long) (1e9 / share) : Long.MAX_VALUE;
+            var next = -1L;
+            var turn = 0;
+            while (isRunning) {
+                var now = System.nanoTime();
+                if (now >= startAt && !publishers.isEmpty()) {
+                    if (next < 0) next = startAt;
+                    // Open loop, sends are timed from the schedule so a stalled server shows up in the latency
+                    for (; next <= now; next += interval) {
+                        var publisher = publishers.get(turn++ % publishers.size());
+                        if (publisher.outstanding >= MAX_OUTSTANDING) {
+                            missed.increment();
+                            continue;
+                        }
+                        publisher.buffer.storeObject(new Request(
+                          RequestType.Publish, new Pair<>(topics.sample(), RUN + ':' + next)
+                        ));
+                        publisher.outstanding++;
+                        published.increment();
+                        if (next >= measureFrom) measuredPublishes++;
+                    }
+                    for (var publisher : publishers)
+                        publisher.flush();
+                }
+                var wait = now < startAt || next < 0 ? 10 : Math.max(0, (next - System.nanoTime()) / 1_000_000);
+                poll(selector, wait);
+            }
+        }
+
+        private void poll(Selector selector, long wait) throws IOException {
+            if (wait == 0) selector.selectNow();
+            else selector.select(wait);
+            for (var key : selector.selectedKeys()) {
+                var connection = (Connection) key.attachment();
+                try {
+                    if (key.isValid() && key.isWritable())
+                        connection.flush();
+                    if (key.isValid() && key.isReadable())
+                        for (var obj : connection.receive())
+                            handle(connection, (Response) obj);
+                } catch (IOException e) {
+                    failed.increment();
+                    publishers.remove(connection);
+                    connection.close();
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+
+        // Keeps trying while the accept backlog of the server is full
+        private Connection open(Selector selector) throws IOException {
+            var deadline = System.currentTimeMillis() + 10_000;
+            for (;;)
+                try {
+                    return Connection.open(address, selector);
+                } catch (ConnectException e) {
+                    if (System.currentTimeMillis() > deadline) throw e;
+                    poll(selector, 10);
+                }
+        }
+
+        // Replaces every connection by a new one that resumes its session or logs in again
+        private void reconnect(Selector selector) throws IOException {
+            var previous = new ArrayList<>(usernames.values());
+            for (var connection : usernames.keySet())
+                connection.close();
+            usernames.clear();
+            publishers.clear();
+            for (var username : previous) {
+                var connection = open(selector);
+                usernames.put(connection, username);
+                var token = tokens.get(username);
+                connection.send(reconnect.equals("resume") && token != null
+                  ? new Request(RequestType.Resume, token)
+                  : authenticate(username, RequestType.Login)
+                );
+                poll(selector, 0);
+            }
+            var deadline = System.currentTimeMillis() + 60_000;
+            while (reconnectedHere < previous.size() && System.currentTimeMillis() < deadline)
+                poll(selector, 10);
+        }
+
+        private void handle(Connection connection, Response response) throws IOException {
+            switch (response.getType()) {
+                case UsernameTaken -> connection.send(authenticate(usernames.get(connection), RequestType.Login));
+                case RegistrationSuccess, AuthorizationSuccess -> {
+                    @SuppressWarnings("unchecked")
+                    var session = ((Pair<String, Session>) response.getPayload()).getSecond();
+                    tokens.put(session.username(), session.token());
+                    if (!isReconnecting) {
+                        subscribe(connection);
+                        return;
+                    }
+                    // Subscriptions of a user are restored by the server with the login
+                    reconnected.increment();
+                    reconnectedHere++;
+                    reconnectedAt = System.nanoTime();
+                }
+                case TopicSubscribed -> {
+                    if (pendingSubscriptions.merge(connection, -1, Integer::sum) == 0)
+                        ready.incrementAndGet();
+                }
+                case PublishedMessage -> {
+                    connection.outstanding--;
+                    acknowledged.increment();
+                }
+                case NewPublication -> {
+                    delivered.increment();
+                    var body = ((Delivery) response.getPayload()).body();
+                    var separator = body.indexOf(':');
+                    if (separator < 0 || !body.startsWith(RUN) || separator != RUN.length()) return;
+                    var sentAt = Long.parseLong(body, separator + 1, body.length(), 10);
+                    if (sentAt >= measureFrom)
+                        latencies.record(System.nanoTime() - sentAt);
+                }
+                case PublicationShed -> shed.increment();
+                case InvalidCredentials, AccessDenied, UnknownTopic -> throw new IOException(
+                  usernames.get(connection) + ": " + response.getPayload()
+                );
+                default -> {}
+            }
+        }
+
+        private void subscribe(Connection connection) throws IOException {
+            if (subscriptions == 0) {
+                ready.incrementAndGet();
+                return;
+            }
+            var chosen = new HashSet<String>();
+            // Steep distributions rarely draw the tail, it is filled up in order instead
+            for (var attempts = 0; chosen.size() < subscriptions && attempts < subscriptions * 100; attempts++)
+                chosen.add(topics.sample());
+            for (var i = 0; chosen.size() < subscriptions; i++)
+                chosen.add(topics.titles[i]);
+            pendingSubscriptions.put(connection, chosen.size());
+            for (var title : chosen)
+                connection.buffer.storeObject(new Request(RequestType.Subscribe, title));
+            connection.flush();
+        }
+
+    }
+
+}
@@ -0,0 +1,94 @@
+package benchmark;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+import shared.codec.FrameCodec;
+import shared.models.communication.Response;
+import shared.models.communication.ResponseType;
+import shared.models.communication.SharedFrame;
+import shared.models.data.Credentials;
+import shared.models.data.Delivery;
+import shared.models.data.Post;
+import shared.models.data.Topic;
+import shared.models.data.User;
+
+import server.MessagingServer;
+import server.handlers.ClientHandler;
+import server.pipeline.Publication;
+
+
+// Usage: RoutingBenchmark [clients] [topics] [subscriptionsPerClient] [publishes]
+public class RoutingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        var clientCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        var topicCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        var subscriptions = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        var publishes = args.length > 3 ? Integer.parseInt(args[3]) : 20_000;
+
+        var server = new MessagingServer();
+        var random = ThreadLocalRandom.current();
+        var topics = new Topic[topicCount];
+        for (var i = 0; i < topicCount; i++)
+            topics[i] = new Topic("topic/" + i);
+
+        var clients = new ArrayList<ClientHandler>(clientCount);
+        var subscribed = new ArrayList<ArrayList<Topic>>(clientCount);
+        var loopback = InetAddress.getLoopbackAddress();
+        for (var i = 0; i < clientCount; i++) {
+            var client = new ClientHandler(loopback, i, 0, null, server);
+            var topicsOfClient = new ArrayList<Topic>(subscriptions);
+            for (var s = 0; s < subscriptions; s++) {
+                var topic = topics[(i + s * 7919) % topicCount];
+                topicsOfClient.add(topic);
+                server.getRoutes().add(topic, client);
+            }
+            clients.add(client);
+            subscribed.add(topicsOfClient);
+        }
+        System.out.printf(
+          "clients=%d topics=%d subscriptions/client=%d routes=%d%n",
+          clientCount, topicCount, subscriptions, server.getRoutes().size()
+        );
+
+        var codec = FrameCodec.preferred();
+        var author = new User(Credentials.fromHash("author", ""));
+        var indexed = new Latencies(publishes);
+        for (var round = 0; round < 2; round++)
+            for (var i = 0; i < publishes; i++) {
+                var topic = topics[random.nextInt(topicCount)];
+                var start = System.nanoTime();
+                var post = new Post(topic, "payload", author);
+                var publication = new Publication(
+                  SharedFrame.encode(codec, new Response(ResponseType.NewPublication, Delivery.of(post))), post, null
+                );
+                server.getRoutes().route(topic, client -> client.deliver(publication));
+                publication.frame().release();
+                if (round == 1)
+                    indexed.record(System.nanoTime() - start);
+            }
+        System.out.println("indexed routing: " + indexed.summary());
+
+        var scans = Math.max(1, publishes / 20);
+        var scanned = new Latencies(scans);
+        for (var round = 0; round < 2; round++)
+            for (var i = 0; i < scans; i++) {
+                var topic = topics[random.nextInt(topicCount)];
+                var start = System.nanoTime();
+                var post = new Post(topic, "payload", author);
+                var publication = new Publication(
+                  SharedFrame.encode(codec, new Response(ResponseType.NewPublication, Delivery.of(post))), post, null
+                );
+                for (var c = 0; c < clientCount; c++)
+                    if (subscribed.get(c).contains(topic))
+                        clients.get(c).deliver(publication);
+                publication.frame().release();
+                if (round == 1)
+                    scanned.record(System.nanoTime() - start);
+            }
+        System.out.println("linear scan:     " + scanned.summary());
+    }
+
+}
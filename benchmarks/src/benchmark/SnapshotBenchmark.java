@@ -0,0 +1,71 @@
+package benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+import shared.models.data.Credentials;
+import shared.models.data.Topic;
+import shared.models.data.User;
+
+import server.storage.Snapshot;
+
+
+// Usage: SnapshotBenchmark [users] [topics] [subscriptionsPerUser] [rounds] [file]
+public class SnapshotBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        var userCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        var topicCount = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        var subscriptions = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        var rounds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        var file = args.length > 4 ? Path.of(args[4]) : Files.createTempFile("bench", ".snapshot");
+
+        var topics = new ConcurrentHashMap<String, Topic>();
+        var users = new ConcurrentHashMap<String, User>();
+        for (var i = 0; i < topicCount; i++)
+            topics.put("topic/" + i, new Topic("topic/" + i));
+        var titles = new ArrayList<>(topics.keySet());
+        for (var i = 0; i < userCount; i++) {
+            var user = new User(Credentials.fromHash("user-" + i, Integer.toHexString(i).repeat(8)));
+            for (var s = 0; s < subscriptions; s++) {
+                var topic = topics.get(titles.get((i + s * 7919) % topicCount));
+                topic.addSubscriber(user);
+                user.addSubscription(topic);
+                user.position(topic).set(i % 1000);
+            }
+            if (i % 10 == 0)
+                user.addFilter("topic/+");
+            users.put(user.username(), user);
+        }
+        System.out.printf("users=%d topics=%d subscriptions/user=%d%n", userCount, topicCount, subscriptions);
+
+        var snapshot = new Snapshot(file, topics::values, users::values);
+        try {
+            for (var round = 0; round < rounds; round++) {
+                var start = System.nanoTime();
+                snapshot.write();
+                var written = System.nanoTime();
+                var restoredTopics = new ConcurrentHashMap<String, Topic>();
+                var restoredUsers = new ConcurrentHashMap<String, User>();
+                var restored = Snapshot.load(
+                  file, title -> restoredTopics.computeIfAbsent(title, Topic::new),
+                  user -> restoredUsers.put(user.username(), user)
+                );
+                var loaded = System.nanoTime();
+                if (restored.users() != userCount || restoredTopics.size() != topicCount)
+                    throw new IllegalStateException("Restored " + restored + " of " + userCount + " users");
+                System.out.printf(
+                  "round %d: %.1f MiB, write %d ms, load %d ms%n",
+                  round, Files.size(file) / (1024.0 * 1024), (written - start) / 1_000_000, (loaded - written) / 1_000_000
+                );
+            }
+        } finally {
+            snapshot.close();
+            if (args.length <= 4)
+                Files.deleteIfExists(file);
+        }
+    }
+
+}
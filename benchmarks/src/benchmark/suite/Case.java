@@ -0,0 +1,34 @@
+package benchmark.suite;
+
+import java.io.IOException;
+import java.util.List;
+
+
+// One benchmark measured once for every value of its parameter
+public record Case(String name, String param, List<String> values, boolean freshPerIteration, Setup setup) {
+
+    @FunctionalInterface
+    public interface Setup {
+        Fixture open(String value) throws Exception;
+    }
+
+    // State prepared outside the measurement, run returns how many operations it performed
+    public interface Fixture extends AutoCloseable {
+
+        long run() throws Exception;
+
+        @Override
+        default void close() throws IOException {}
+
+    }
+
+    public static Case of(String name, String param, List<String> values, Setup setup) {
+        return new Case(name, param, values, false, setup);
+    }
+
+    // For operations that grow the state, so every iteration measures the same sizes
+    public static Case growing(String name, String param, List<String> values, Setup setup) {
+        return new Case(name, param, values, true, setup);
+    }
+
+}
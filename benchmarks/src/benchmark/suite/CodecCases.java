@@ -0,0 +1,129 @@
+package benchmark.suite;
+
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import shared.codec.BinaryCodec;
+import shared.codec.FrameCodec;
+import shared.models.communication.Response;
+import shared.models.communication.ResponseType;
+import shared.models.communication.TransmissionBuffer;
+import shared.models.data.Delivery;
+
+
+public class CodecCases {
+
+    private static final List<String> PAYLOAD_BYTES = List.of("16", "256", "4096", "65536");
+    private static final int BATCH = 32;
+    private static final int STREAM_FRAMES = 64;
+
+    private CodecCases() {}
+
+    static Response publication(int bodyBytes) {
+        return new Response(
+          ResponseType.NewPublication,
+          new Delivery("bench/codec", "author", System.currentTimeMillis(), 0, "x".repeat(bodyBytes))
+        );
+    }
+
+    // Structured text like most real bodies, repetitive keys with varying values
+    static Response document(int bodyBytes) {
+        var random = new Random(bodyBytes);
+        var body = new StringBuilder("[");
+        while (body.length() < bodyBytes)
+            body.append(String.format(
+              "{\"id\":%d,\"symbol\":\"S%03d\",\"price\":%.2f,\"volume\":%d},",
+              random.nextInt(1_000_000), random.nextInt(500), random.nextDouble() * 1000, random.nextInt(10_000)
+            ));
+        body.setLength(bodyBytes - 1);
+        return new Response(
+          ResponseType.NewPublication,
+          new Delivery("bench/codec", "author", System.currentTimeMillis(), 0, body.append(']').toString())
+        );
+    }
+
+    public static List<Case> all() {
+        return List.of(
+          Case.of("codec.encode", "payloadBytes", PAYLOAD_BYTES, value -> {
+              var codec = FrameCodec.preferred();
+              var response = publication(Integer.parseInt(value));
+              return () -> {
+                  Suite.sink += codec.encode(response).remaining();
+                  return 1;
+              };
+          }),
+          Case.of("codec.decode", "payloadBytes", PAYLOAD_BYTES, value -> {
+              var codec = FrameCodec.preferred();
+              var encoded = codec.encode(publication(Integer.parseInt(value)));
+              return () -> {
+                  Suite.sink += codec.decode(encoded.duplicate()).hashCode();
+                  return 1;
+              };
+          }),
+          // Compressing the value of an encoded frame at the default level
+          Case.of("codec.deflate", "payloadBytes", PAYLOAD_BYTES, value -> {
+              var encoded = BinaryCodec.INSTANCE.encode(document(Integer.parseInt(value)));
+              return () -> {
+                  var frame = BinaryCodec.INSTANCE.deflate(encoded, 0, Deflater.BEST_SPEED);
+                  Suite.sink += frame == null ? 0 : frame.remaining();
+                  return 1;
+              };
+          }),
+          Case.of("codec.inflate", "payloadBytes", PAYLOAD_BYTES, value -> {
+              var encoded = BinaryCodec.INSTANCE.encode(document(Integer.parseInt(value)));
+              var deflated = BinaryCodec.INSTANCE.deflate(encoded, 0, Deflater.BEST_SPEED);
+              var frame = deflated == null ? encoded : deflated;
+              return () -> {
+                  Suite.sink += BinaryCodec.INSTANCE.decode(frame.duplicate()).hashCode();
+                  return 1;
+              };
+          }),
+          // storeObject, write, read and retrieveObjects of a batch of frames through a pair of buffers
+          Case.of("buffer.roundTrip", "payloadBytes", PAYLOAD_BYTES, value -> {
+              var response = publication(Integer.parseInt(value));
+              var out = TransmissionBuffer.allocate();
+              var in = TransmissionBuffer.allocate();
+              var channel = new MemoryChannel(Integer.MAX_VALUE);
+              return new Case.Fixture() {
+                  @Override
+                  public long run() throws Exception {
+                      for (var i = 0; i < BATCH; i++)
+                          out.storeObject(response);
+                      out.write(channel);
+                      var decoded = 0;
+                      while (decoded < BATCH && in.read(channel))
+                          decoded += in.retrieveObjects().size();
+                      Suite.sink += decoded;
+                      return BATCH;
+                  }
+
+                  @Override
+                  public void close() {
+                      out.release();
+                  }
+              };
+          }),
+          // Frames of 256 byte bodies arriving in reads of at most chunkBytes, the operation is one frame
+          Case.of("framing.partialReads", "chunkBytes", List.of("1", "7", "64", "1500", "65536"), value -> {
+              var codec = FrameCodec.preferred();
+              var frame = codec.encode(publication(256));
+              var stream = new byte[frame.remaining() * STREAM_FRAMES];
+              for (var i = 0; i < STREAM_FRAMES; i++)
+                  frame.duplicate().get(stream, i * frame.remaining(), frame.remaining());
+              var in = TransmissionBuffer.allocate();
+              var channel = new MemoryChannel(Integer.parseInt(value));
+              return () -> {
+                  channel.fill(stream);
+                  var decoded = 0;
+                  while (in.read(channel))
+                      decoded += in.retrieveObjects().size();
+                  if (decoded != STREAM_FRAMES)
+                      throw new IllegalStateException("Decoded " + decoded + " of " + STREAM_FRAMES + " frames");
+                  return STREAM_FRAMES;
+              };
+          })
+        );
+    }
+
+}
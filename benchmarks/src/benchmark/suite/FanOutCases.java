@@ -0,0 +1,121 @@
+package benchmark.suite;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import shared.models.communication.Request;
+import shared.models.communication.RequestType;
+import shared.models.communication.Response;
+import shared.models.communication.ResponseType;
+import shared.models.data.Credentials;
+import shared.models.generics.Pair;
+
+import server.MessagingServer;
+import server.ServerMode;
+
+import benchmark.Connection;
+
+
+public class FanOutCases {
+
+    private static final String TOPIC = "bench/fanout";
+    private static final int WINDOW = 16;
+    // Every server gets its own port, the previous one may still be held after stopping
+    private static final AtomicInteger nextPort = new AtomicInteger(Integer.getInteger("bench.port", 47300));
+
+    private FanOutCases() {}
+
+    public static List<Case> all() {
+        return List.of(
+          // A window of publishes over loopback, done once every subscriber received all of them
+          Case.of("fanout.loopback", "subscribers", List.of("1", "32", "512"), value -> {
+              var port = nextPort.getAndIncrement();
+              var server = new MessagingServer();
+              server.start(new int[]{port}, ServerMode.Selector);
+              return new LoopbackFixture(server, new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                Integer.parseInt(value));
+          })
+        );
+    }
+
+    private static class LoopbackFixture implements Case.Fixture {
+
+        private final MessagingServer server;
+        private final Selector selector = Selector.open();
+        private final ArrayList<Connection> connections = new ArrayList<>();
+        private final Connection publisher;
+        private final int subscribers;
+        private long acknowledged = 0, delivered = 0, subscribed = 0;
+
+        LoopbackFixture(MessagingServer server, InetSocketAddress address, int subscribers) throws Exception {
+            this.server = server;
+            this.subscribers = subscribers;
+            try {
+                publisher = Connection.open(address, selector);
+                connections.add(publisher);
+                publisher.send(new Request(RequestType.Register, Credentials.fromHash("publisher", "")));
+                publisher.send(new Request(RequestType.Publish, new Pair<>(TOPIC, "first")));
+                await(1, 0, 0);
+                for (var i = 0; i < subscribers; i++) {
+                    var subscriber = Connection.open(address, selector);
+                    connections.add(subscriber);
+                    subscriber.send(new Request(RequestType.Register, Credentials.fromHash("subscriber" + i, "")));
+                    subscriber.send(new Request(RequestType.Subscribe, TOPIC));
+                }
+                await(1, 0, subscribers);
+            } catch (Exception e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public long run() throws Exception {
+            var acknowledgedTarget = acknowledged + WINDOW;
+            var deliveredTarget = delivered + (long) WINDOW * subscribers;
+            for (var i = 0; i < WINDOW; i++)
+                publisher.buffer.storeObject(new Request(RequestType.Publish, new Pair<>(TOPIC, "payload")));
+            publisher.flush();
+            await(acknowledgedTarget, deliveredTarget, subscribers);
+            return WINDOW;
+        }
+
+        private void await(long acknowledgedTarget, long deliveredTarget, long subscribedTarget) throws Exception {
+            var deadline = System.nanoTime() + 10_000_000_000L;
+            while (acknowledged < acknowledgedTarget || delivered < deliveredTarget || subscribed < subscribedTarget) {
+                if (System.nanoTime() > deadline)
+                    throw new IllegalStateException("Fan-out did not complete within 10 seconds");
+                selector.select(100);
+                for (var key : selector.selectedKeys()) {
+                    var connection = (Connection) key.attachment();
+                    if (key.isValid() && key.isWritable())
+                        connection.flush();
+                    if (!key.isValid() || !key.isReadable()) continue;
+                    for (var obj : connection.receive())
+                        switch (((Response) obj).getType()) {
+                            case PublishedMessage -> acknowledged++;
+                            case NewPublication -> delivered++;
+                            case TopicSubscribed -> subscribed++;
+                            default -> {}
+                        }
+                }
+                selector.selectedKeys().clear();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (var connection : connections)
+                connection.close();
+            selector.close();
+            server.stop();
+        }
+
+    }
+
+}
@@ -0,0 +1,68 @@
+package benchmark.suite;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+
+
+// In-memory stand-in for a socket, every read returns at most chunk bytes
+public class MemoryChannel implements ByteChannel, GatheringByteChannel {
+
+    private final int chunk;
+    private ByteBuffer data = ByteBuffer.allocate(1 << 16);
+
+    public MemoryChannel(int chunk) {
+        this.chunk = chunk;
+    }
+
+    private void ensure(long bytes) {
+        if (data.remaining() >= bytes) return;
+        var grown = ByteBuffer.allocate((int) Math.max(data.capacity() * 2L, data.position() + bytes));
+        data = grown.put(data.flip());
+    }
+
+    public void fill(byte[] bytes) {
+        ensure(bytes.length);
+        data.put(bytes);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) {
+        if (data.position() == 0) return 0;
+        data.flip();
+        var count = Math.min(Math.min(chunk, dst.remaining()), data.remaining());
+        dst.put(dst.position(), data, 0, count).position(dst.position() + count);
+        data.position(count).compact();
+        return count;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        var count = src.remaining();
+        ensure(count);
+        data.put(src);
+        return count;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) {
+        long count = 0;
+        for (var i = offset; i < offset + length; i++)
+            count += write(srcs[i]);
+        return count;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) {
+        return write(srcs, 0, srcs.length);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void close() {}
+
+}
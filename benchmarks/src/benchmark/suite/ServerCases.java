@@ -0,0 +1,56 @@
+package benchmark.suite;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import shared.models.data.Credentials;
+import shared.models.data.User;
+
+import server.MessagingServer;
+
+
+public class ServerCases {
+
+    private static final int SUBSCRIPTION_TOPICS = 10_000;
+
+    private ServerCases() {}
+
+    static String[] createTopics(MessagingServer server, User author, int count) throws IOException {
+        var titles = new String[count];
+        for (var i = 0; i < count; i++) {
+            titles[i] = "topic/" + i;
+            server.addMessage(titles[i], "first", author);
+        }
+        return titles;
+    }
+
+    public static List<Case> all() {
+        return List.of(
+          Case.growing("server.addMessage", "topics", List.of("1", "1000", "100000"), value -> {
+              var server = new MessagingServer();
+              var author = server.registerUser(Credentials.fromHash("author", ""));
+              var titles = createTopics(server, author, Integer.parseInt(value));
+              return () -> {
+                  var title = titles[ThreadLocalRandom.current().nextInt(titles.length)];
+                  Suite.sink += server.addMessage(title, "payload", author).offset();
+                  return 1;
+              };
+          }),
+          Case.growing("server.subscribeUser", "users", List.of("100", "10000", "100000"), value -> {
+              var server = new MessagingServer();
+              var users = new User[Integer.parseInt(value)];
+              for (var i = 0; i < users.length; i++)
+                  users[i] = server.registerUser(Credentials.fromHash("user" + i, ""));
+              var titles = createTopics(server, users[0], SUBSCRIPTION_TOPICS);
+              return () -> {
+                  var random = ThreadLocalRandom.current();
+                  var topic = server.subscribeUser(titles[random.nextInt(titles.length)], users[random.nextInt(users.length)]);
+                  Suite.sink += topic.nextOffset();
+                  return 1;
+              };
+          })
+        );
+    }
+
+}
@@ -0,0 +1,186 @@
+package benchmark.suite;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+
+// Usage: Suite [-f regex] [-wi warmupIterations] [-i iterations] [-t iterationMillis] [-p param=v1,v2] [-o results.json]
+public class Suite {
+
+    // Results of the measured operations end up here so the JIT cannot discard them
+    static long sink;
+
+    // Two sided 99.9% Student t quantiles by degrees of freedom, the same interval JMH reports
+    private static final double[] T_QUANTILES = {
+      636.62, 31.60, 12.92, 8.61, 6.87, 5.96, 5.41, 5.04, 4.78, 4.59,
+      4.44, 4.32, 4.22, 4.14, 4.07, 4.01, 3.97, 3.92, 3.88, 3.85,
+      3.82, 3.79, 3.77, 3.75, 3.73, 3.71, 3.69, 3.67, 3.66, 3.65
+    };
+
+    private record Result(Case benchmark, String value, double[] scores) {
+
+        double mean() {
+            return Arrays.stream(scores).average().orElse(0);
+        }
+
+        double error() {
+            if (scores.length < 2) return Double.NaN;
+            var mean = mean();
+            var variance = Arrays.stream(scores).map(s -> (s - mean) * (s - mean)).sum() / (scores.length - 1);
+            var df = scores.length - 1;
+            return (df <= T_QUANTILES.length ? T_QUANTILES[df - 1] : 3.29) * Math.sqrt(variance / scores.length);
+        }
+
+    }
+
+    public static List<Case> cases() {
+        var cases = new ArrayList<Case>();
+        cases.addAll(CodecCases.all());
+        cases.addAll(ServerCases.all());
+        cases.addAll(FanOutCases.all());
+        return cases;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Measures the server, not the disk, unless a log directory is given explicitly
+        if (System.getProperty("messaging.logDirectory") == null)
+            System.setProperty("messaging.logDirectory", "");
+        var filter = Pattern.compile(".*");
+        int warmups = 3, iterations = 5;
+        long iterationMillis = 1000;
+        Path output = null;
+        var overrides = new HashMap<String, List<String>>();
+        for (var i = 0; i + 1 < args.length; i += 2)
+            switch (args[i]) {
+                case "-f" -> filter = Pattern.compile(args[i + 1]);
+                case "-wi" -> warmups = Integer.parseInt(args[i + 1]);
+                case "-i" -> iterations = Integer.parseInt(args[i + 1]);
+                case "-t" -> iterationMillis = Long.parseLong(args[i + 1]);
+                case "-o" -> output = Path.of(args[i + 1]);
+                case "-p" -> {
+                    var parts = args[i + 1].split("=", 2);
+                    overrides.put(parts[0], List.of(parts[1].split(",")));
+                }
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+
+        // The server prints its lifecycle, only the results go to the console
+        var console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        var results = new ArrayList<Result>();
+        try {
+            console.printf("%-24s %-22s %18s %14s%n", "Benchmark", "Param", "Score (ops/s)", "Error");
+            for (var benchmark : cases()) {
+                if (!filter.matcher(benchmark.name()).find()) continue;
+                for (var value : overrides.getOrDefault(benchmark.param(), benchmark.values())) {
+                    var result = measure(benchmark, value, warmups, iterations, iterationMillis);
+                    results.add(result);
+                    console.printf(
+                      "%-24s %-22s %18.1f %14.1f%n",
+                      benchmark.name(), benchmark.param() + '=' + value, result.mean(), result.error()
+                    );
+                }
+            }
+        } finally {
+            System.setOut(console);
+        }
+        if (output != null) {
+            Files.writeString(output, json(results, warmups, iterations, iterationMillis));
+            console.println("Results written to " + output);
+        }
+    }
+
+    private static Result measure(
+      Case benchmark, String value, int warmups, int iterations, long iterationMillis
+    ) throws Exception {
+        var scores = new double[iterations];
+        var fixture = benchmark.setup().open(value);
+        try {
+            for (var i = 0; i < warmups + iterations; i++) {
+                if (i > 0 && benchmark.freshPerIteration()) {
+                    fixture.close();
+                    fixture = benchmark.setup().open(value);
+                }
+                long operations = 0, elapsed;
+                var start = System.nanoTime();
+                var end = start + iterationMillis * 1_000_000L;
+                do {
+                    operations += fixture.run();
+                } while ((elapsed = System.nanoTime()) < end);
+                if (i >= warmups)
+                    scores[i - warmups] = operations * 1e9 / (elapsed - start);
+            }
+        } finally {
+            fixture.close();
+        }
+        return new Result(benchmark, value, scores);
+    }
+
+    // Same layout as the JSON results of JMH so existing tooling can compare runs
+    private static String json(List<Result> results, int warmups, int iterations, long iterationMillis) {
+        var runtime = ManagementFactory.getRuntimeMXBean();
+        var jvmArgs = runtime.getInputArguments().stream().map(Suite::quote).collect(Collectors.joining(", "));
+        var out = new StringBuilder("[\n");
+        for (var i = 0; i < results.size(); i++) {
+            var result = results.get(i);
+            var mean = result.mean();
+            var error = result.error();
+            out.append("  {\n")
+              .append("    \"benchmark\": ").append(quote(result.benchmark().name())).append(",\n")
+              .append("    \"mode\": \"thrpt\",\n")
+              .append("    \"threads\": 1,\n")
+              .append("    \"forks\": 0,\n")
+              .append("    \"jvmArgs\": [").append(jvmArgs).append("],\n")
+              .append("    \"jdkVersion\": ").append(quote(System.getProperty("java.version"))).append(",\n")
+              .append("    \"vmName\": ").append(quote(System.getProperty("java.vm.name"))).append(",\n")
+              .append("    \"vmVersion\": ").append(quote(System.getProperty("java.vm.version"))).append(",\n")
+              .append("    \"warmupIterations\": ").append(warmups).append(",\n")
+              .append("    \"warmupTime\": \"").append(iterationMillis).append(" ms\",\n")
+              .append("    \"measurementIterations\": ").append(iterations).append(",\n")
+              .append("    \"measurementTime\": \"").append(iterationMillis).append(" ms\",\n")
+              .append("    \"params\": {").append(quote(result.benchmark().param())).append(": ")
+              .append(quote(result.value())).append("},\n")
+              .append("    \"primaryMetric\": {\n")
+              .append("      \"score\": ").append(number(mean)).append(",\n")
+              .append("      \"scoreError\": ").append(number(error)).append(",\n")
+              .append("      \"scoreConfidence\": [").append(number(mean - error)).append(", ")
+              .append(number(mean + error)).append("],\n")
+              .append("      \"scoreUnit\": \"ops/s\",\n")
+              .append("      \"rawData\": [[")
+              .append(Arrays.stream(result.scores()).mapToObj(Suite::number).collect(Collectors.joining(", ")))
+              .append("]]\n")
+              .append("    },\n")
+              .append("    \"secondaryMetrics\": {}\n")
+              .append(i + 1 < results.size() ? "  },\n" : "  }\n");
+        }
+        return out.append("]\n").toString();
+    }
+
+    private static String number(double value) {
+        return Double.isFinite(value) ? Double.toString(value) : "\"NaN\"";
+    }
+
+    private static String quote(String value) {
+        var out = new StringBuilder("\"");
+        for (var c : value.toCharArray())
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                default -> {
+                    if (c < 0x20) out.append(String.format("\\u%04x", (int) c));
+                    else out.append(c);
+                }
+            }
+        return out.append('"').toString();
+    }
+
+}
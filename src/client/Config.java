@@ -4,6 +4,7 @@ package client;
 public class Config {
 
     public static final short REQUEST_TIMEOUT_MILLIS = 400;
+    public static final short RESPONSE_TIMEOUT_MILLIS = 2000;
 
     private Config() {}
 
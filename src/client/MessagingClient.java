@@ -3,12 +3,19 @@ package client;
 import java.io.IOException;
 import java.nio.channels.*;
 import java.net.InetSocketAddress;
+import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import shared.models.communication.*;
 import shared.models.data.Credentials;
-import shared.models.data.Post;
+import shared.models.data.Cursor;
+import shared.models.data.Session;
+import shared.models.data.Stats;
 import shared.models.generics.Pair;
 import shared.util.Styling;
 import java.text.SimpleDateFormat;
@@ -22,7 +29,9 @@ import static client.util.Templates.*;
 public class MessagingClient implements Runnable {
 
     private SocketChannel channel = null;
-    private String username = "Guest";
+    private volatile String username = "Guest";
+    // Kept across connections so joining again resumes the session instead of logging in
+    private volatile String token = null;
     private final AtomicBoolean isRunning = new AtomicBoolean(false);
     private final AtomicBoolean isConnecting = new AtomicBoolean(false);
     private final AtomicBoolean isConnected = new AtomicBoolean(false);
@@ -71,44 +80,22 @@ public class MessagingClient implements Runnable {
               PURPLE + "Traffic is now routed to " + BLUE + address + BLACK_BRIGHT + ':' + BLUE + port + GRAY + '.'
             );
             printSeparator();
-            var buffer = TransmissionBuffer.allocate();
-            var reading = new Thread(() -> {
-                while (true) {
-                    try {
-                        if (channel == null) break;
-                        if (!buffer.read(channel)) {
-                            for (var obj : buffer.retrieveObjects()) {
-                                var response = (Response) obj;
-                                if (response.getType() == ResponseType.NewPublication) {
-                                    var post = (Post) response.getPayload();
-                                    printMessage(
-                                      GRAY + '<' + PURPLE + "New post" + RESET + " by " + CYAN + post.author().username() + GRAY + '>' +
-                                        RESET + ": " + BLUE + post.topic().getTitle() + GRAY + ": " +
-                                        RESET + post.body(),
-                                      GRAY + new SimpleDateFormat("dd.MM.yyyy HH:mm:ss").format(post.createdAt())
-                                    );
-                                } else if (
-                                  response.getType() == ResponseType.AuthorizationSuccess ||
-                                    response.getType() == ResponseType.RegistrationSuccess
-                                ) {
-                                    username = ((Pair<String, String>) response.getPayload()).getSecond();
-                                    printMessage(
-                                      GRAY + '<' + CYAN + "Server" + GRAY + '>' +
-                                        RESET + ": " + ((Pair<String, String>) response.getPayload()).getFirst().toString()
-                                    );
-                                } else {
-                                    printMessage(
-                                      GRAY + '<' + CYAN + "Server" + GRAY + '>' +
-                                        RESET + ": " + response.getPayload().toString()
-                                    );
-                                }
-                            }
-                        }
-                    } catch (IOException ignored) {}
-                }
-            });
+            var session = MessagingSession.connect(channel);
+            session.onPublication(post -> printMessage(
+              GRAY + '<' + PURPLE + "New post" + RESET + " by " + CYAN + post.author() + GRAY + '>' +
+                RESET + ": " + BLUE + post.topic() + GRAY + ": " +
+                RESET + post.body(),
+              GRAY + new SimpleDateFormat("dd.MM.yyyy HH:mm:ss").format(post.createdAt())
+            ));
+            session.onEvent(this::printResponse);
+            session.onClose(this::disconnect);
+            if (token != null)
+                session.send(RequestType.Resume, token).thenAccept(response -> {
+                    if (response.getType() != ResponseType.AuthorizationSuccess)
+                        token = null;
+                    printResponse(response);
+                });
             try {
-                reading.start();
                 for (;;) {
                     var request = requestInput(
                       input -> {
@@ -119,6 +106,21 @@ public class MessagingClient implements Runnable {
                           var arguments = commandEnd != input.length() ? input.substring(commandEnd + 1).trim() : null;
                           return switch (command) {
                               case "disconnect" -> new Request(RequestType.Disconnect);
+                              case "stats" -> new Request(RequestType.Stats);
+                              case "compress" -> {
+                                  if (arguments != null && !arguments.equals("deflate") && !arguments.equals("none"))
+                                      throw new IllegalArgumentException(
+                                        "The correct format is \"compress [deflate | none]\""
+                                      );
+                                  yield new Request(RequestType.Compression, arguments == null ? "deflate" : arguments);
+                              }
+                              case "aliases" -> {
+                                  if (arguments != null && !arguments.equals("on") && !arguments.equals("off"))
+                                      throw new IllegalArgumentException(
+                                        "The correct format is \"aliases [on | off]\""
+                                      );
+                                  yield new Request(RequestType.Aliases, arguments == null ? "on" : arguments);
+                              }
                               case "login" -> {
                                   String[] parts;
                                   if (arguments == null || (parts = arguments.split("[ \\t]+")).length != 2)
@@ -142,6 +144,31 @@ public class MessagingClient implements Runnable {
                                       );
                                   yield new Request(RequestType.Subscribe, arguments);
                               }
+                              case "replay" -> {
+                                  String[] parts;
+                                  if (arguments == null || (parts = arguments.split("[ \\t]+", 2)).length == 0)
+                                      throw new IllegalArgumentException(
+                                        "The correct format is \"replay [topic] [offset | @dd.MM.yyyy HH:mm:ss]\""
+                                      );
+                                  if (parts.length == 1)
+                                      yield new Request(RequestType.Replay, Cursor.resume(parts[0]));
+                                  try {
+                                      yield new Request(
+                                        RequestType.Replay,
+                                        parts[1].startsWith("@")
+                                          ? Cursor.since(
+                                              parts[0],
+                                              new SimpleDateFormat("dd.MM.yyyy HH:mm:ss")
+                                                .parse(parts[1].substring(1).trim()).getTime()
+                                            )
+                                          : Cursor.fromOffset(parts[0], Long.parseUnsignedLong(parts[1]))
+                                      );
+                                  } catch (ParseException | NumberFormatException e) {
+                                      throw new IllegalArgumentException(
+                                        "The correct format is \"replay [topic] [offset | @dd.MM.yyyy HH:mm:ss]\""
+                                      );
+                                  }
+                              }
                               case "pub" -> {
                                   String body;
                                   if (arguments == null || !arguments.contains(" ") ||
@@ -154,21 +181,23 @@ public class MessagingClient implements Runnable {
                                     new Pair<>(arguments.substring(0, arguments.indexOf(" ")), body)
                                   );
                               }
-                              default -> {
-                                  Thread.sleep(1000);
-                                  throw new IllegalArgumentException("Unknown command");
-                              }
+                              default -> throw new IllegalArgumentException("Unknown command");
                           };
                       }, "", GRAY + '<' + CYAN + username + GRAY + '>'
                     );
-                    Thread.sleep(500);
-                    buffer.storeObject(request);
-                    while (buffer.write(channel));
-                    if (request.getType() == RequestType.Disconnect)
+                    if (!session.isOpen()) break;
+                    var printed = session.send(request).thenAccept(this::printResponse);
+                    if (request.getType() == RequestType.Disconnect) {
+                        token = null;
                         break;
-                    Thread.sleep(500);
+                    }
+                    // Only keeps the prompt behind the answer, the session itself does not wait
+                    try {
+                        printed.get(Config.RESPONSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                    } catch (ExecutionException | TimeoutException ignored) {}
                 }
             } finally {
+                session.close();
                 disconnect();
             }
         } catch (UnresolvedAddressException ex) {
@@ -178,6 +207,32 @@ public class MessagingClient implements Runnable {
         } catch (UnsupportedOperationException ignored) {}
     }
 
+    private void printResponse(Response response) {
+        if (
+          response.getType() == ResponseType.AuthorizationSuccess ||
+            response.getType() == ResponseType.RegistrationSuccess
+        ) {
+            var payload = (Pair<String, Session>) response.getPayload();
+            username = payload.getSecond().username();
+            token = payload.getSecond().token();
+            printMessage(GRAY + '<' + CYAN + "Server" + GRAY + '>' + RESET + ": " + payload.getFirst());
+        } else if (response.getType() == ResponseType.Compression) {
+            printMessage(GRAY + '<' + CYAN + "Server" + GRAY + '>' + RESET + ": Compression set to " + response.getPayload());
+        } else if (response.getType() == ResponseType.Aliases) {
+            printMessage(GRAY + '<' + CYAN + "Server" + GRAY + '>' + RESET + ": Topic aliases turned " + response.getPayload());
+        } else if (response.getPayload() instanceof Stats stats) {
+            var lines = new ArrayList<String>();
+            lines.add(GRAY + '<' + CYAN + "Server" + GRAY + '>' + RESET + ": Statistics");
+            stats.values().forEach((name, value) -> lines.add(BLUE + name + GRAY + ": " + RESET + value));
+            printMessage(lines.toArray(String[]::new));
+        } else {
+            printMessage(
+              GRAY + '<' + CYAN + "Server" + GRAY + '>' +
+                RESET + ": " + response.getPayload().toString()
+            );
+        }
+    }
+
     public void disconnect() {
         isConnecting.set(false);
         try {
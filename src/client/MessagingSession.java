@@ -0,0 +1,181 @@
+package client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import shared.models.communication.Request;
+import shared.models.communication.RequestType;
+import shared.models.communication.Response;
+import shared.models.communication.ResponseType;
+import shared.models.communication.TransmissionBuffer;
+import shared.models.data.Delivery;
+import shared.models.data.TopicAlias;
+
+
+// Any number of requests may be in flight, a single I/O thread sleeps on a selector until the channel
+// is readable or a request is waiting, listeners and futures are completed on that thread
+public class MessagingSession implements Closeable {
+
+    private final SocketChannel channel;
+    private final Selector selector;
+    private final SelectionKey key;
+    private final TransmissionBuffer buffer = TransmissionBuffer.allocate();
+    private final AtomicInteger ids = new AtomicInteger(0);
+    private final ConcurrentHashMap<Integer, CompletableFuture<Response>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final AtomicBoolean writeRequested = new AtomicBoolean(false);
+    // Titles by the aliases the server announced and the other way round, only filled once aliases are turned on
+    private final ConcurrentHashMap<Integer, String> aliases = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> aliasesByTopic = new ConcurrentHashMap<>();
+
+    private volatile Consumer<Delivery> publicationListener = delivery -> {};
+    private volatile Consumer<Response> eventListener = response -> {};
+    private volatile Runnable closeListener = () -> {};
+
+    private MessagingSession(SocketChannel channel) throws IOException {
+        this.channel = channel;
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        key = channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    public static MessagingSession connect(InetSocketAddress address) throws IOException {
+        return connect(SocketChannel.open(address));
+    }
+
+    // Takes over an already connected channel
+    public static MessagingSession connect(SocketChannel channel) throws IOException {
+        var session = new MessagingSession(channel);
+        var loop = new Thread(session::run, "session-io");
+        loop.setDaemon(true);
+        loop.start();
+        return session;
+    }
+
+    public void onPublication(Consumer<Delivery> listener) {
+        publicationListener = listener;
+    }
+
+    // Responses that do not answer a request, publications excluded
+    public void onEvent(Consumer<Response> listener) {
+        eventListener = listener;
+    }
+
+    // The alias announced for the topic, -1 when there is none
+    public int alias(String topic) {
+        return aliasesByTopic.getOrDefault(topic, -1);
+    }
+
+    public void onClose(Runnable listener) {
+        closeListener = listener;
+    }
+
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    public CompletableFuture<Response> send(Request request) {
+        var future = new CompletableFuture<Response>();
+        if (closed.get()) {
+            future.completeExceptionally(new ClosedChannelException());
+            return future;
+        }
+        int id;
+        do {
+            id = ids.incrementAndGet() & Integer.MAX_VALUE;
+        } while (id == 0);
+        inFlight.put(id, future);
+        if (closed.get() && inFlight.remove(id) != null) {
+            future.completeExceptionally(new ClosedChannelException());
+            return future;
+        }
+        buffer.storeObject(request.withId(id));
+        if (writeRequested.compareAndSet(false, true))
+            selector.wakeup();
+        // The server answers a disconnect by closing the connection
+        if (request.getType() == RequestType.Disconnect)
+            future.whenComplete((response, failure) -> close());
+        return future;
+    }
+
+    public CompletableFuture<Response> send(RequestType type, Object payload) {
+        return send(payload == null ? new Request(type) : new Request(type, payload));
+    }
+
+    private void run() {
+        try {
+            while (!closed.get()) {
+                selector.select();
+                if (writeRequested.getAndSet(false))
+                    key.interestOpsOr(SelectionKey.OP_WRITE);
+                if (!key.isValid()) break;
+                // A wakeup alone leaves the ready set of the previous selection on the key
+                var ready = selector.selectedKeys().remove(key) ? key.readyOps() : 0;
+                if ((ready & SelectionKey.OP_READ) != 0 && buffer.read(channel))
+                    for (var obj : buffer.retrieveObjects())
+                        dispatch((Response) obj);
+                if ((ready & SelectionKey.OP_WRITE) != 0 && !buffer.write(channel))
+                    key.interestOpsAnd(~SelectionKey.OP_WRITE);
+            }
+        } catch (IOException | RuntimeException ignored) {
+        } finally {
+            close();
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
+            // Only released once the loop is done with the buffers
+            buffer.release();
+        }
+    }
+
+    // A failing listener is reported to the uncaught exception handler, the session keeps running
+    private void dispatch(Response response) {
+        try {
+            var future = response.getId() == 0 ? null : inFlight.remove(response.getId());
+            if (future != null)
+                future.complete(response);
+            else if (response.getType() == ResponseType.NewPublication) {
+                var delivery = (Delivery) response.getPayload();
+                publicationListener.accept(
+                  delivery.topic() == null ? delivery.resolve(aliases.get(delivery.alias())) : delivery
+                );
+            } else if (response.getType() == ResponseType.TopicAlias) {
+                var alias = (TopicAlias) response.getPayload();
+                var previous = aliases.put(alias.alias(), alias.topic());
+                if (previous != null)
+                    aliasesByTopic.remove(previous, alias.alias());
+                aliasesByTopic.put(alias.topic(), alias.alias());
+            } else
+                eventListener.accept(response);
+        } catch (RuntimeException e) {
+            var thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed.getAndSet(true)) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        selector.wakeup();
+        for (var id : inFlight.keySet()) {
+            var future = inFlight.remove(id);
+            if (future != null)
+                future.completeExceptionally(new ClosedChannelException());
+        }
+        closeListener.run();
+    }
+
+}
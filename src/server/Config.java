@@ -1,9 +1,86 @@
 package server;
 
+import server.handlers.SlowConsumerPolicy;
+import server.util.ConsoleLog;
+
 public class Config {
 
     public static final short DEFAULT_PORTS_AMOUNT  = 4;
     public static final short SELECTOR_TIMEOUT_MILLIS = 400;
+    // Pending connections per port before new ones are refused, the kernel may cap it (net.core.somaxconn)
+    public static final int   ACCEPT_BACKLOG = Integer.getInteger("messaging.acceptBacklog", 4096);
+    public static final int   REACTOR_THREADS = Math.max(
+      1, Integer.getInteger("messaging.reactors", Runtime.getRuntime().availableProcessors())
+    );
+
+    public static final int   COMMAND_THREADS = Math.max(
+      1, Integer.getInteger("messaging.commandThreads", Runtime.getRuntime().availableProcessors())
+    );
+    public static final int   COMMAND_QUEUE_CAPACITY = 4096;
+    public static final int   FANOUT_LANES = Math.max(
+      1, Integer.getInteger("messaging.fanOutLanes", Runtime.getRuntime().availableProcessors())
+    );
+    public static final int   FANOUT_QUEUE_CAPACITY = 1024;
+    public static final int   MAX_PENDING_REQUESTS = 64;
+    public static final int   REPLAY_BATCH_SIZE = 256;
+    // The next replay batch is only stored once the pending outbound bytes fall below this mark
+    public static final long  REPLAY_LOW_WATER_BYTES = 256 * 1024;
+
+    public static final int   OUTBOUND_MAX_MESSAGES = Integer.getInteger("messaging.outboundMessages", 4096);
+    public static final long  OUTBOUND_MAX_BYTES = Long.getLong("messaging.outboundBytes", 8L << 20);
+    public static final SlowConsumerPolicy SLOW_CONSUMER_POLICY = SlowConsumerPolicy.valueOf(
+      System.getProperty("messaging.slowConsumerPolicy", SlowConsumerPolicy.DropOldest.name())
+    );
+    public static final long  SLOW_CONSUMER_GRACE_MILLIS = Long.getLong("messaging.slowConsumerGraceMillis", 5000);
+
+    // An empty directory disables the message log
+    public static final String LOG_DIRECTORY = System.getProperty("messaging.logDirectory", "data");
+    public static final long  LOG_FLUSH_INTERVAL_MILLIS = Long.getLong("messaging.logFlushMillis", 200);
+    public static final long  LOG_SEGMENT_BYTES = Math.min(
+      Integer.MAX_VALUE, Long.getLong("messaging.logSegmentBytes", 64L << 20)
+    );
+    public static final int   LOG_INDEX_INTERVAL_BYTES = 4096;
+
+    // Users, topics and subscriptions are written here periodically and when the server stops, empty disables
+    // snapshots, they follow the message log unless set
+    public static final String SNAPSHOT_FILE = System.getProperty(
+      "messaging.snapshotFile", LOG_DIRECTORY.isEmpty() ? "" : LOG_DIRECTORY + "/state.snapshot"
+    );
+    public static final long  SNAPSHOT_INTERVAL_MILLIS = Long.getLong("messaging.snapshotMillis", 60_000);
+
+    // History every topic keeps in memory for replays, 0 lifts a limit
+    public static final long  RETENTION_MESSAGES = Long.getLong("messaging.retentionMessages", 100_000);
+    public static final long  RETENTION_BYTES = Long.getLong("messaging.retentionBytes", 64L << 20);
+    public static final long  RETENTION_MILLIS = Long.getLong("messaging.retentionMillis", 24 * 60 * 60 * 1000);
+    // Per topic or filter overrides as "topic:messages=1000,bytes=1048576,millis=60000;sensors/#:millis=5000"
+    public static final String TOPIC_RETENTION = System.getProperty("messaging.topicRetention", "");
+    public static final long  RETENTION_SWEEP_MILLIS = Math.max(1, Long.getLong("messaging.retentionSweepMillis", 1000));
+    // Topics with the most retained bytes reported by the Stats response
+    public static final int   RETENTION_GAUGE_TOPICS = 10;
+
+    // Off, Error, Info or Debug, the last one logs every login, publish, subscription and replay
+    public static final ConsoleLog.Level CONSOLE_LEVEL = ConsoleLog.Level.valueOf(
+      System.getProperty("messaging.consoleLevel", ConsoleLog.Level.Debug.name())
+    );
+    // Only one in this many debug events is printed
+    public static final int   CONSOLE_SAMPLE_RATE = Math.max(1, Integer.getInteger("messaging.consoleSampleRate", 1));
+    public static final int   CONSOLE_QUEUE_CAPACITY = 8192;
+    public static final long  CONSOLE_FLUSH_TIMEOUT_MILLIS = 1000;
+
+    // A node with a cluster port or peers forwards publications to the peers subscribed to their topic
+    public static final int   CLUSTER_PORT = Integer.getInteger("messaging.clusterPort", 0);
+    // Comma separated host:port cluster ports of every other node
+    public static final String CLUSTER_PEERS = System.getProperty("messaging.clusterPeers", "");
+    public static final long  CLUSTER_RETRY_MILLIS = Long.getLong("messaging.clusterRetryMillis", 1000);
+
+    // Session tokens issued at login stay valid this long after they were issued or last resumed
+    public static final long  SESSION_TTL_MILLIS = Long.getLong("messaging.sessionTtlMillis", 15 * 60 * 1000);
+
+    // Connections asking for compression get publications whose body is at least this long deflated, -1 refuses
+    public static final int   COMPRESSION_THRESHOLD_BYTES = Integer.getInteger("messaging.compressionThreshold", 1024);
+    public static final int   COMPRESSION_LEVEL = Integer.getInteger("messaging.compressionLevel", 1);
+
+    public static final boolean METRICS_JMX = Boolean.parseBoolean(System.getProperty("messaging.jmx", "true"));
 
     private Config() {}
 
@@ -3,19 +3,43 @@ package server;
 import java.io.IOException;
 import java.nio.channels.*;
 import java.net.*;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
+import shared.codec.FrameCodec;
+import shared.models.communication.Response;
+import shared.models.communication.ResponseType;
+import shared.models.communication.SharedFrame;
+import shared.models.data.Delivery;
 import shared.models.data.Post;
+import shared.models.data.Retention;
 import shared.models.data.Topic;
 import shared.models.data.User;
 import shared.models.data.Credentials;
 
 import static shared.util.Styling.*;
 
+import server.cluster.Cluster;
 import server.handlers.ClientHandler;
+import server.handlers.ConnectionAcceptor;
 import server.handlers.TransmissionHandler;
+import server.handlers.VirtualThreadHandler;
+import server.metrics.ServerMetrics;
+import server.pipeline.Pipeline;
+import server.retention.Evictor;
+import server.retention.RetentionPolicies;
+import server.routing.RoutingTable;
+import server.routing.TopicAliases;
+import server.routing.TopicTrie;
+import server.sessions.SessionCache;
+import server.storage.LogRecord;
+import server.storage.MessageLog;
+import server.storage.Snapshot;
+import server.util.ConsoleLog;
 
 import static server.util.Templates.*;
 
@@ -29,66 +53,190 @@ public class MessagingServer {
     private Thread binder = null;
     private ArrayList<ServerSocketChannel> channels = null;
     private ArrayList<ClientHandler> clients = null;
-    private final ArrayList<User> users = new ArrayList<>();
-    private final ArrayList<Topic> topics = new ArrayList<>();
+    private TransmissionHandler[] reactors = null;
+    private VirtualThreadHandler virtualThreads = null;
+    private Pipeline pipeline = null;
+    private final ConcurrentHashMap<String, User> users = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Topic> topics = new ConcurrentHashMap<>();
+    private final RoutingTable routes = new RoutingTable();
+    private final TopicAliases aliases = new TopicAliases();
+    // Every topic under its title, so a filter finds the topics it matches
+    private final TopicTrie<Topic> titles = new TopicTrie<>();
+    private final SessionCache sessions = new SessionCache();
+    private final Cluster cluster = new Cluster(Config.CLUSTER_PORT, Cluster.parsePeers(Config.CLUSTER_PEERS));
+    private final RetentionPolicies retention = RetentionPolicies.parse(
+      new Retention(Config.RETENTION_MESSAGES, Config.RETENTION_BYTES, Config.RETENTION_MILLIS), Config.TOPIC_RETENTION
+    );
+    private Evictor evictor = null;
+    private final ServerMetrics metrics = new ServerMetrics(cluster::connectedPeers, topics::values);
+    private final MessageLog log;
+    private final Snapshot snapshot;
+    private long recoveredMessages = 0;
+    private Snapshot.Restored restored = null;
+    private long restoreMillis = 0;
 
     public MessagingServer() throws IOException {
         selector = Selector.open();
+        if (!Config.SNAPSHOT_FILE.isEmpty()) {
+            var start = System.nanoTime();
+            restored = Snapshot.load(Path.of(Config.SNAPSHOT_FILE), this::topic, user -> users.put(user.username(), user));
+            restoreMillis = (System.nanoTime() - start) / 1_000_000;
+            snapshot = new Snapshot(Path.of(Config.SNAPSHOT_FILE), topics::values, users::values);
+        } else snapshot = null;
+        var authors = new HashMap<String, User>();
+        log = Config.LOG_DIRECTORY.isEmpty()
+          ? null
+          : MessageLog.open(Path.of(Config.LOG_DIRECTORY), (title, record) -> recover(title, record, authors));
+        // A position past the recovered history would hold back every later delivery of the topic
+        users.values().forEach(user -> user.getPositions().forEach((title, position) -> {
+            var topic = topics.get(title);
+            if (topic != null && position > topic.nextOffset())
+                user.existingPosition(topic).set(topic.nextOffset());
+        }));
     }
 
-    public Post addMessage(String topic, String body, User author) {
-        var match = topics.stream().filter(t -> t.getTitle().equals(topic)).findFirst();
-        if (match.isPresent()) {
-            var post = new Post(match.get(), body, author);
-            match.get().addMessage(post);
-            return post;
-        } else {
-            var t = new Topic(topic);
-            topics.add(t);
-            var post = new Post(t, body, author);
-            t.addMessage(post);
-            return post;
+    // Authors of recovered posts are not registered users, they only carry the username
+    private void recover(String title, LogRecord record, HashMap<String, User> authors) {
+        var author = authors.computeIfAbsent(
+          record.author(), username -> new User(Credentials.fromHash(username, null))
+        );
+        var topic = topic(title);
+        topic.addMessage(new Post(topic, record.body(), author, new Date(record.createdAt())));
+        recoveredMessages++;
+    }
+
+    private Topic topic(String title) {
+        return topics.computeIfAbsent(title, t -> {
+            var topic = new Topic(t, retention.forTopic(t));
+            aliases.assign(topic);
+            titles.add(t, topic);
+            return topic;
+        });
+    }
+
+    public Post addMessage(String topic, String body, User author) throws IOException {
+        return addMessage(topic, body, author, new Date());
+    }
+
+    public Post addMessage(String topic, String body, User author, Date createdAt) throws IOException {
+        if (TopicTrie.isFilter(topic)) return null;
+        return addMessage(topic(topic), body, author, createdAt);
+    }
+
+    // A message the log failed to store is rejected, so the offsets of the topic and its log never diverge
+    public Post addMessage(Topic topic, String body, User author, Date createdAt) throws IOException {
+        var post = new Post(topic, body, author, createdAt);
+        synchronized (topic) {
+            if (log != null)
+                try {
+                    log.append(topic.getTitle(), post.createdAt().getTime(), author.username(), body);
+                } catch (IOException e) {
+                    ConsoleLog.error(error__storage, topic.getTitle());
+                    throw e;
+                }
+            topic.addMessage(post);
         }
+        return post;
+    }
+
+    // Posts evicted from the topic are still in its log, empty when there is none
+    public List<Post> readLog(Topic topic, long fromOffset, int limit) throws IOException {
+        var posts = new ArrayList<Post>();
+        var log = this.log;
+        if (log == null) return posts;
+        log.read(topic.getTitle(), fromOffset, limit, record -> {
+            var author = users.get(record.author());
+            posts.add(new Post(
+              topic, record.body(), author != null ? author : new User(Credentials.fromHash(record.author(), null)),
+              new Date(record.createdAt()), record.offset()
+            ));
+        });
+        return posts;
+    }
+
+    // Evicted posts are read back from the log, without one a replay starts at the oldest post kept
+    public long oldestOffset(Topic topic) {
+        return log != null ? 0 : topic.firstOffset();
+    }
+
+    // Publications of peers get an offset of this node and reach its subscribers, they are never forwarded again
+    public void addForwarded(Delivery delivery) throws IOException, InterruptedException {
+        var pipeline = this.pipeline;
+        var author = users.get(delivery.author());
+        if (author == null)
+            author = new User(Credentials.fromHash(delivery.author(), null));
+        var post = addMessage(delivery.topic(), delivery.body(), author, delivery.createdAt());
+        if (post == null || pipeline == null) return;
+        var frame = SharedFrame.encode(
+          FrameCodec.preferred(), new Response(ResponseType.NewPublication, Delivery.of(post))
+        );
+        pipeline.publish(frame, post, null);
     }
 
     public ArrayList<ClientHandler> getClients() {
         return clients;
     }
 
+    public RoutingTable getRoutes() {
+        return routes;
+    }
+
+    public Pipeline getPipeline() {
+        return pipeline;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public SessionCache getSessions() {
+        return sessions;
+    }
+
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    public Topic getTopic(String title) {
+        return topics.get(title);
+    }
+
+    public Topic getTopic(int alias) {
+        return aliases.get(alias);
+    }
+
+    public void findTopics(String filter, Consumer<Topic> action) {
+        titles.find(filter, action);
+    }
+
+    public Collection<Topic> getTopics() {
+        return topics.values();
+    }
+
+    // Subscribing before anything was published creates the topic
     public Topic subscribeUser(String topic, User user) {
-        var match = topics.stream().filter(t -> t.getTitle().equals(topic)).findFirst();
-        if (match.isPresent()) {
-            var t = match.get();
-            t.addSubscriber(user);
-            user.addSubscription(t);
-            return t;
-        } else return null;
+        var t = topic(topic);
+        t.addSubscriber(user);
+        user.addSubscription(t);
+        return t;
+    }
+
+    public void subscribeFilter(String filter, User user) {
+        user.addFilter(filter);
     }
 
     public User loginUser(Credentials info) {
-        synchronized (users) {
-            return users
-              .stream()
-              .filter(u ->
-                Objects.equals(u.username(), info.getUsername()) &&
-                Objects.equals(u.password(), info.getPasswordHash())
-              )
-              .findFirst()
-              .orElse(null);
-        }
+        var user = users.get(info.getUsername());
+        return user != null && Objects.equals(user.password(), info.getPasswordHash()) ? user : null;
     }
 
     public User registerUser(Credentials info) {
-        synchronized (users) {
-            var taken = users.stream().anyMatch(u -> u.username().equals(info.getUsername()));
-            var user = taken ? null : new User(info);
-            if (!taken)
-                users.add(user);
-            return user;
-        }
+        var user = new User(info);
+        return users.putIfAbsent(info.getUsername(), user) == null ? user : null;
     }
 
     public void addClient(ClientHandler client) {
+        metrics.recordAccept();
         synchronized (clients) {
             clients.add(client);
         }
@@ -118,7 +266,7 @@ public class MessagingServer {
         }
     }
 
-    public synchronized void bind(int[] ports) throws BindException {
+    public synchronized void bind(int[] ports, ServerMode mode) throws BindException {
         if(!isRunning.get()) return;
         unbind();
         byte i = 0;
@@ -126,8 +274,9 @@ public class MessagingServer {
             for (; i < ports.length; i++) {
                 var channel = ServerSocketChannel.open();
                 channels.add(channel);
-                channel.socket().bind(new InetSocketAddress(InetAddress.getLocalHost(), ports[i]));
-                channel.configureBlocking(false).register(selector, SelectionKey.OP_ACCEPT);
+                channel.socket().bind(new InetSocketAddress(InetAddress.getLocalHost(), ports[i]), Config.ACCEPT_BACKLOG);
+                if (mode == ServerMode.Selector)
+                    channel.configureBlocking(false).register(selector, SelectionKey.OP_ACCEPT);
             }
         } catch (IOException e) {
             for (var channel : channels)
@@ -136,6 +285,26 @@ public class MessagingServer {
                 } catch (Exception ignored) {}
             throw new BindException(String.format(error__port_range.val, ports[i]));
         }
+        try {
+            cluster.start(this);
+        } catch (BindException e) {
+            for (var channel : channels)
+                try {
+                    channel.close();
+                } catch (Exception ignored) {}
+            throw e;
+        }
+        if (mode == ServerMode.Selector) {
+            reactors = new TransmissionHandler[Config.REACTOR_THREADS];
+            try {
+                for (var r = 0; r < reactors.length; r++)
+                    reactors[r] = new TransmissionHandler(this);
+            } catch (IOException e) {
+                reactors = null;
+                unbind();
+                throw new BindException(error__transmission.val);
+            }
+        } else virtualThreads = new VirtualThreadHandler(new ArrayList<>(channels), this);
         String host = "localhost";
         try {
             host = InetAddress.getLocalHost().toString();
@@ -147,22 +316,61 @@ public class MessagingServer {
               .stream()
               .map(channel -> String.format(port_format.val, channel.socket().getLocalPort()))
               .collect(Collectors.joining())
-              .replaceFirst(", $", ".")
+              .replaceFirst(", $", "."),
+          mode == ServerMode.Selector
+            ? String.format(message__reactors_info.val, reactors.length)
+            : message__virtual_threads_info.val
         );
+        if (restored != null)
+            printMessage(String.format(
+              message__snapshot_info.val, restored.users(), restored.topics(), snapshot.file(), restoreMillis
+            ));
+        if (log != null)
+            printMessage(String.format(message__log_info.val, recoveredMessages, topics.size(), log.directory()));
+        if (cluster.isEnabled())
+            printMessage(String.format(
+              message__cluster_info.val, cluster.port() > 0 ? cluster.port() : "closed", cluster.peers().size()
+            ));
         printSeparator();
         isListening.set(true);
-        new Thread(new TransmissionHandler(selector, this)).start();
+        pipeline = new Pipeline(routes, cluster);
+        pipeline.start();
+        metrics.register(this::connections);
+        if (mode == ServerMode.Selector) {
+            for (var r = 0; r < reactors.length; r++)
+                new Thread(reactors[r], "reactor-" + r).start();
+            new Thread(new ConnectionAcceptor(selector, this, reactors), "acceptor").start();
+        } else virtualThreads.run();
+    }
+
+    public void bind(int[] ports) throws BindException {
+        bind(ports, ServerMode.Selector);
+    }
+
+    public void bind(byte portsAmount, ServerMode mode) throws BindException {
+        bind(new int[portsAmount == 0 ? Config.DEFAULT_PORTS_AMOUNT : portsAmount], mode);
     }
 
     public void bind(byte portsAmount) throws BindException {
-        bind(new int[portsAmount == 0 ? Config.DEFAULT_PORTS_AMOUNT : portsAmount]);
+        bind(portsAmount, ServerMode.Selector);
     }
 
     public synchronized void unbind() {
         isListening.set(false);
         interruptBinder();
+        if (reactors != null)
+            for (var reactor : reactors)
+                reactor.shutdown();
+        reactors = null;
+        cluster.stop();
+        if (virtualThreads != null)
+            virtualThreads.shutdown();
+        virtualThreads = null;
+        if (pipeline != null)
+            pipeline.shutdown();
+        pipeline = null;
         if (clients != null)
-            for (var client : clients)
+            for (var client : new ArrayList<>(clients))
                 client.close();
         clients = new ArrayList<>();
         if (channels != null)
@@ -174,6 +382,8 @@ public class MessagingServer {
                     printError(error__unbind.val + " " + port);
                 }
         channels = new ArrayList<>();
+        // Events of the closed connections are printed before the shutdown messages
+        ConsoleLog.flush();
         printSeparator();
         printMessage(message__channels_cleared.val);
         printSeparator();
@@ -182,6 +392,10 @@ public class MessagingServer {
     public void start() {
         if(isRunning.getAndSet(true)) return;
         synchronized (this) {
+            evictor = new Evictor(topics::values);
+            evictor.start();
+            if (snapshot != null)
+                snapshot.start();
             printSeparator();
             printMessage(message__starting.data);
             printSeparator();
@@ -201,7 +415,7 @@ public class MessagingServer {
                                         return amount;
                                     }, error__ports_amount.val, request__ports_amount.data
                                   );
-                                  bind(portsAmount);
+                                  bind(portsAmount, requestMode());
                               }
                               case "manual" -> {
                                   var ports = requestInput(
@@ -214,7 +428,7 @@ public class MessagingServer {
                                       }
                                     ).toArray(), error__port_range.val, request__ports.data
                                   );
-                                  bind(ports);
+                                  bind(ports, requestMode());
                               }
                               default -> throw new IllegalArgumentException(error__binding.val);
                           }
@@ -232,9 +446,44 @@ public class MessagingServer {
         }
     }
 
+    private static ServerMode requestMode() throws InterruptedException {
+        return requestInput(
+          input -> switch (input) {
+              case "selector" -> ServerMode.Selector;
+              case "virtual" -> ServerMode.VirtualThreads;
+              default -> throw new IllegalArgumentException(error__mode.val);
+          }, error__mode.val, request__mode.data
+        );
+    }
+
+    public void start(int[] ports, ServerMode mode) throws BindException {
+        if (isRunning.getAndSet(true)) return;
+        synchronized (this) {
+            evictor = new Evictor(topics::values);
+            evictor.start();
+            if (snapshot != null)
+                snapshot.start();
+        }
+        bind(ports, mode);
+    }
+
     public synchronized void stop() {
         if (!isRunning.getAndSet(false)) return;
         unbind();
+        metrics.unregister();
+        evictor.close();
+        evictor = null;
+        if (log != null)
+            log.close();
+        if (snapshot != null)
+            try {
+                snapshot.close();
+                snapshot.write();
+            } catch (IOException e) {
+                ConsoleLog.error(error__snapshot, snapshot.file());
+            }
+        var policy = Config.SLOW_CONSUMER_POLICY;
+        printMessage(String.format(message__shed_info.val, policy, policy.shed(), policy.disconnects()));
         printSeparator();
         printMessage(message__stopping.data);
         printSeparator();
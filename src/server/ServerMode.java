@@ -0,0 +1,5 @@
+package server;
+
+public enum ServerMode {
+    Selector, VirtualThreads
+}
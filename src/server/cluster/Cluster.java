@@ -0,0 +1,262 @@
+package server.cluster;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import shared.models.communication.Request;
+import shared.models.communication.RequestType;
+import shared.models.communication.Response;
+import shared.models.communication.ResponseType;
+import shared.models.data.Credentials;
+import shared.models.data.Delivery;
+
+import server.Config;
+import server.MessagingServer;
+import server.pipeline.Publication;
+import server.routing.TopicTrie;
+import server.util.ConsoleLog;
+
+import static server.util.Templates.*;
+
+
+// Every node dials the cluster port of each peer. A dialed link carries the publications and registrations
+// of the dialing node, the accepting node answers on it with the topics and filters its connected users
+// subscribed to and withdraws them once the last of those users is gone, so a publication only crosses
+// the links of peers with interest in it and is never forwarded twice
+public class Cluster {
+
+    private MessagingServer server = null;
+    private final int port;
+    private final List<InetSocketAddress> peers;
+
+    // Topics and filters of local subscriptions by the number of connections holding them, guarded by this
+    private final HashMap<String, Integer> interest = new HashMap<>();
+    private final ConcurrentHashMap<String, Set<PeerLink>> routes = new ConcurrentHashMap<>();
+    private final TopicTrie<PeerLink> filters = new TopicTrie<>();
+    private final Set<PeerLink> links = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean isRunning = false;
+    private ServerSocketChannel channel = null;
+    private ExecutorService executor = null;
+
+    public Cluster(int port, List<InetSocketAddress> peers) {
+        this.port = port;
+        this.peers = List.copyOf(peers);
+    }
+
+    // Peers as comma separated host:port pairs
+    public static List<InetSocketAddress> parsePeers(String peers) {
+        var addresses = new ArrayList<InetSocketAddress>();
+        for (var peer : peers.split(",")) {
+            if (peer.isBlank()) continue;
+            var separator = peer.lastIndexOf(':');
+            addresses.add(
+              InetSocketAddress.createUnresolved(
+                peer.substring(0, separator).trim(), Integer.parseInt(peer.substring(separator + 1).trim())
+              )
+            );
+        }
+        return addresses;
+    }
+
+    public boolean isEnabled() {
+        return port > 0 || !peers.isEmpty();
+    }
+
+    public int port() {
+        return channel == null ? port : channel.socket().getLocalPort();
+    }
+
+    public List<InetSocketAddress> peers() {
+        return peers;
+    }
+
+    public int connectedPeers() {
+        return (int) links.stream().filter(link -> link.isDialed).count();
+    }
+
+    // Links only start after the server is known, everything they receive is handed to it
+    public synchronized void start(MessagingServer server) throws BindException {
+        this.server = server;
+        if (!isEnabled() || isRunning) return;
+        if (port > 0)
+            try {
+                channel = ServerSocketChannel.open();
+                channel.bind(new InetSocketAddress(port));
+            } catch (IOException e) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {}
+                channel = null;
+                throw new BindException(String.format(error__port_taken.val, port));
+            }
+        isRunning = true;
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        if (channel != null)
+            executor.execute(this::accept);
+        for (var peer : peers)
+            executor.execute(() -> dial(peer));
+    }
+
+    public synchronized void stop() {
+        if (!isRunning) return;
+        isRunning = false;
+        if (channel != null)
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+        channel = null;
+        for (var link : links)
+            link.close();
+        executor.shutdownNow();
+        executor = null;
+    }
+
+    private void accept() {
+        while (isRunning) {
+            try {
+                var socket = channel.accept();
+                var address = (InetSocketAddress) socket.getRemoteAddress();
+                executor.execute(() -> serve(new PeerLink(socket, address, false)));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                ConsoleLog.info(message__connection_unsuccessful);
+            }
+        }
+    }
+
+    private void dial(InetSocketAddress peer) {
+        while (isRunning) {
+            try {
+                var socket = SocketChannel.open(new InetSocketAddress(peer.getHostString(), peer.getPort()));
+                socket.socket().setTcpNoDelay(true);
+                serve(new PeerLink(socket, peer, true));
+            } catch (IOException ignored) {}
+            try {
+                Thread.sleep(Config.CLUSTER_RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(PeerLink link) {
+        // The peer learns the whole interest first, later changes follow in the order they were made
+        synchronized (this) {
+            links.add(link);
+            if (!link.isDialed)
+                for (var title : interest.keySet())
+                    link.send(new Request(RequestType.Interest, title));
+        }
+        ConsoleLog.info(message__peer_linked, link.address.getHostString(), link.address.getPort());
+        try {
+            link.serve(item -> receive(link, item));
+        } catch (IOException ignored) {
+        } finally {
+            links.remove(link);
+            for (var title : link.interest)
+                unroute(link, title);
+            if (isRunning)
+                ConsoleLog.info(message__peer_lost, link.address.getHostString(), link.address.getPort());
+        }
+    }
+
+    private void receive(PeerLink link, Object item) {
+        if (link.isDialed) {
+            if (item instanceof Request request && request.getType() == RequestType.Interest) {
+                var title = (String) request.getPayload();
+                if (!link.interest.add(title)) return;
+                if (TopicTrie.isFilter(title))
+                    filters.add(title, link);
+                else
+                    routes.compute(title, (key, peers) -> {
+                        if (peers == null)
+                            peers = ConcurrentHashMap.newKeySet();
+                        peers.add(link);
+                        return peers;
+                    });
+            } else if (item instanceof Request request && request.getType() == RequestType.Withdraw) {
+                var title = (String) request.getPayload();
+                if (link.interest.remove(title))
+                    unroute(link, title);
+            }
+        } else if (item instanceof Response response && response.getType() == ResponseType.NewPublication) {
+            server.getMetrics().recordPeerReceived();
+            try {
+                server.addForwarded((Delivery) response.getPayload());
+            } catch (IOException ignored) {
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                link.close();
+            }
+        } else if (item instanceof Request request && request.getType() == RequestType.Register)
+            server.registerUser((Credentials) request.getPayload());
+    }
+
+    private void unroute(PeerLink link, String title) {
+        if (TopicTrie.isFilter(title))
+            filters.remove(title, link);
+        else
+            routes.computeIfPresent(title, (key, peers) -> {
+                peers.remove(link);
+                return peers.isEmpty() ? null : peers;
+            });
+    }
+
+    // Called once per connection holding the subscription, only the first one reaches the peers
+    public synchronized void announce(String title) {
+        if (!isEnabled() || interest.merge(title, 1, Integer::sum) > 1) return;
+        for (var link : links)
+            if (!link.isDialed)
+                link.send(new Request(RequestType.Interest, title));
+    }
+
+    // Balances an announce, the peers stop forwarding once no connection holds the subscription
+    public synchronized void withdraw(String title) {
+        var count = interest.get(title);
+        if (count == null) return;
+        if (count > 1) {
+            interest.put(title, count - 1);
+            return;
+        }
+        interest.remove(title);
+        for (var link : links)
+            if (!link.isDialed)
+                link.send(new Request(RequestType.Withdraw, title));
+    }
+
+    public void register(Credentials credentials) {
+        for (var link : links)
+            if (link.isDialed)
+                link.send(new Request(RequestType.Register, credentials));
+    }
+
+    // Runs on the fan-out lane of the topic, so every peer receives its publications in order
+    public void forward(Publication publication) {
+        var title = publication.message().topic().getTitle();
+        Set<PeerLink> targets = routes.getOrDefault(title, Collections.emptySet());
+        targets.forEach(link -> forward(link, publication));
+        filters.match(title, targets, link -> forward(link, publication));
+    }
+
+    private void forward(PeerLink link, Publication publication) {
+        if (link.forward(publication.frame()))
+            server.getMetrics().recordPeerForward();
+        else
+            server.getMetrics().recordPeerDrop();
+    }
+
+}
@@ -0,0 +1,100 @@
+package server.cluster;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import shared.models.communication.SharedFrame;
+import shared.models.communication.TransmissionBuffer;
+
+import server.Config;
+
+
+// Blocking connection with another node, read on the thread serving it and written by its own virtual thread
+final class PeerLink {
+
+    final InetSocketAddress address;
+    final boolean isDialed;
+    // Topics and filters the peer announced, leaving the routes together with the link
+    final Set<String> interest = ConcurrentHashMap.newKeySet();
+
+    private final SocketChannel channel;
+    private final TransmissionBuffer buffer = TransmissionBuffer.allocate(-1);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final AtomicBoolean writeRequested = new AtomicBoolean(false);
+    private volatile Thread writer = null;
+
+    PeerLink(SocketChannel channel, InetSocketAddress address, boolean isDialed) {
+        this.channel = channel;
+        this.address = address;
+        this.isDialed = isDialed;
+    }
+
+    // Publications beyond the outbound limit are dropped rather than stalling the fan-out lane
+    boolean forward(SharedFrame frame) {
+        if (closed.get() || buffer.pendingBytes() >= Config.OUTBOUND_MAX_BYTES) return false;
+        buffer.storeFrame(frame);
+        requestWrite();
+        return true;
+    }
+
+    void send(Object item) {
+        if (closed.get()) return;
+        buffer.storeObject(item);
+        requestWrite();
+    }
+
+    // Hands every received object to the handler until the connection fails or the link is closed
+    void serve(Consumer<Object> handler) throws IOException {
+        writer = Thread.ofVirtual().name("cluster-writer").start(this::drain);
+        try {
+            for (;;) {
+                buffer.read(channel);
+                for (var item : buffer.retrieveObjects())
+                    handler.accept(item);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void requestWrite() {
+        if (writeRequested.getAndSet(true)) return;
+        var writer = this.writer;
+        if (writer != null)
+            LockSupport.unpark(writer);
+    }
+
+    private void drain() {
+        try {
+            for (;;) {
+                while (!writeRequested.getAndSet(false)) {
+                    if (closed.get()) return;
+                    LockSupport.park(this);
+                }
+                if (closed.get()) return;
+                while (buffer.write(channel))
+                    Thread.onSpinWait();
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    void close() {
+        if (closed.getAndSet(true)) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        var writer = this.writer;
+        if (writer != null)
+            LockSupport.unpark(writer);
+        buffer.release();
+    }
+
+}
@@ -1,24 +1,53 @@
 package server.handlers;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.CancelledKeyException;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.net.InetAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 import shared.models.communication.Response;
 import shared.models.communication.ResponseType;
+import shared.models.data.Aliased;
+import shared.models.data.Cursor;
+import shared.models.data.Delivery;
+import shared.models.data.Post;
+import shared.models.data.Session;
+import shared.models.data.Topic;
+import shared.models.data.TopicAlias;
 import shared.models.data.User;
 import shared.models.data.Credentials;
 import shared.models.communication.Request;
+import shared.models.communication.SharedFrame;
 import shared.models.communication.TransmissionBuffer;
 
-import static shared.util.Styling.*;
-import static shared.util.Styling.Colors.*;
 
+import server.Config;
 import server.MessagingServer;
+import server.metrics.ServerMetrics;
+import server.pipeline.Compression;
+import server.pipeline.Publication;
+import server.routing.TopicTrie;
+import server.util.ConsoleLog;
 import shared.models.generics.Pair;
-import shared.util.Styling;
+
+import static server.util.Templates.*;
 
 
 public class ClientHandler {
@@ -27,11 +56,63 @@ public class ClientHandler {
     public final int foreignPort;
     public final int localPort;
 
-    private TransmissionBuffer buffer;
-    private SocketChannel channel;
+    private volatile TransmissionBuffer buffer;
+    private final SocketChannel channel;
+    private volatile SelectionKey key;
+    private volatile TransmissionHandler reactor;
+    private volatile Thread writer;
     private MessagingServer server;
-    private User user = null;
+    private final ServerMetrics metrics;
+    private volatile User user = null;
+    private volatile String token = null;
+    private volatile boolean isDeflating = false;
+    private volatile boolean isAliasing = false;
+    // Aliases this connection has been told about, an alias is announced before its first use
+    private final BitSet announced = new BitSet();
     private final AtomicBoolean closed = new AtomicBoolean(false);
+    private final AtomicBoolean writeRequested = new AtomicBoolean(false);
+
+    private final ReentrantLock inboundLock = new ReentrantLock();
+    private final Condition inboundDrained = inboundLock.newCondition();
+    private final ArrayDeque<Object> inbound = new ArrayDeque<>();
+    private boolean isScheduled = false;
+    private boolean isReadingPaused = false;
+    // Queued by a fan-out lane that found this client too slow, the lane never waits for the handler monitor
+    private static final Object CLOSING = new Object();
+    private final AtomicBoolean isClosing = new AtomicBoolean(false);
+
+    // Handed to the fan-out once the handler monitor is released, a full lane must not hold it
+    private SharedFrame publishedFrame = null;
+    private Post published = null;
+
+    // Backlog of a topic streamed in batches, only touched by the command worker processing this client
+    private static final class Catchup {
+
+        final Topic topic;
+        final boolean isRequested;
+        long next;
+        long replayed = 0;
+        long skipped = 0;
+
+        Catchup(Topic topic, long next, boolean isRequested) {
+            this.topic = topic;
+            this.next = next;
+            this.isRequested = isRequested;
+        }
+
+    }
+
+    // Live deliveries of these topics are left to their catch-up
+    private final Set<Topic> catchingUp = ConcurrentHashMap.newKeySet();
+    // Subscriptions this connection announced to the cluster, withdrawn when it closes
+    private final HashSet<String> interests = new HashSet<>();
+    private final AtomicReference<Catchup> stalledCatchup = new AtomicReference<>();
+    // Live publications below these offsets were already part of a replayed backlog
+    private final ConcurrentHashMap<Topic, Long> liveFrom = new ConcurrentHashMap<>();
+
+    // Latest queued publication of every topic, used by the conflating policy
+    private final ConcurrentHashMap<Topic, TransmissionBuffer.Entry> latest = new ConcurrentHashMap<>();
+    private volatile long overLimitSince = 0;
 
     public ClientHandler(
       InetAddress address, int foreignPort, int localPort, SocketChannel channel, MessagingServer server
@@ -41,152 +122,774 @@ public class ClientHandler {
         this.localPort = localPort;
         this.channel = channel;
         this.server = server;
+        metrics = server.getMetrics();
         buffer = TransmissionBuffer.allocate(-1);
+        // Positions follow what reached the socket, frames dropped or lost with the queue are replayed later
+        buffer.onWritten(tag -> {
+            if (tag instanceof Publication publication) {
+                metrics.recordWritten(publication.publishedAt());
+                advance(publication.message());
+            } else advance((Post) tag);
+        });
     }
 
-    public synchronized boolean receive() throws IOException {
-        if (closed.get()) return false;
+    public boolean receive() throws IOException {
+        var buffer = this.buffer;
+        if (closed.get() || buffer == null) return false;
+        var before = buffer.bytesRead();
         var success = buffer.read(channel);
+        metrics.recordRead(buffer.bytesRead() - before);
         if (success)
-            for (var obj : buffer.retrieveObjects()) {
-                if (obj instanceof Request request) {
-                    switch (request.getType()) {
-                        case Ping -> buffer.storeObject(new Response(ResponseType.Echo, null));
-                        case Disconnect -> throw new ClosedChannelException();
-                        case Login -> {
-                            if (user != null) {
-                                buffer.storeObject(
-                                  new Response(ResponseType.InvalidCommand, "You are already logged in.")
-                                );
-                                return success;
-                            }
-                            user = server.loginUser((Credentials) request.getPayload());
-                            if (user != null)
-                                printMessage(
-                                  String.format(
-                                    GRAY + '[' + YELLOW + "%d" + GRAY + ']' + RESET + ": " +
-                                      PURPLE + "Client " + BLUE + "%s" + BLACK_BRIGHT + ':' + BLUE + "%d" +
-                                      PURPLE + " signed in as " + BLUE + "%s" + GRAY + '.',
-                                    localPort, address, foreignPort, user.username()
-                                  )
-                                );
-                            buffer.storeObject(user == null
-                                ? new Response(
-                                    ResponseType.InvalidCredentials,
-                                    "Login failed, invalid username or password."
-                                )
-                                : new Response(
-                                    ResponseType.AuthorizationSuccess,
-                                    new Pair<>(
-                                      "Login successful!",
-                                      user.username()
-                                    )
-                                )
-                            );
-                        }
-                        case Register -> {
-                            if (user != null) {
-                                buffer.storeObject(
-                                  new Response(ResponseType.InvalidCommand, "You are already logged in.")
-                                );
-                                return success;
-                            }
-                            user = server.registerUser((Credentials) request.getPayload());
-                            if (user != null)
-                                printMessage(
-                                  String.format(
-                                    GRAY + '[' + YELLOW + "%d" + GRAY + ']' + RESET + ": " +
-                                      PURPLE + "Client " + BLUE + "%s" + BLACK_BRIGHT + ':' + BLUE + "%d" +
-                                      PURPLE + " registered as " + BLUE + "%s" + GRAY + '.',
-                                    localPort, address, foreignPort, user.username()
-                                  )
-                                );
-                            buffer.storeObject(user == null
-                              ? new Response(
-                                ResponseType.UsernameTaken,
-                                "Registration failed, username already exists."
-                              )
-                              : new Response(
-                                ResponseType.RegistrationSuccess,
-                                new Pair<>(
-                                  "Registration successful! You can now log in.",
-                                  user.username()
-                                )
-                              )
-                            );
-                        }
-                        case Publish -> {
-                            if (user == null) {
-                                buffer.storeObject(new Response(ResponseType.AccessDenied, "You are not logged in."));
-                                return success;
-                            }
-                            var data = (Pair<String, String>) request.getPayload();
-                            var message = server.addMessage(data.getFirst(), data.getSecond(), user);
-                            if (message != null) {
-                                for (var c : server.getClients())
-                                    if (c.user != null && c.user.getSubscriptions().contains(message.topic()))
-                                        c.buffer.storeObject(new Response(ResponseType.NewPublication, message));
-                                printMessage(
-                                  String.format(
-                                    GRAY + '[' + YELLOW + "%d" + GRAY + ']' + RESET + ": " + PURPLE + "Client " +
-                                      BLUE + "%s" + PURPLE + " published a message in " + BLUE + "%s" + GRAY + '.',
-                                    localPort, user.username(), message.topic().getTitle()
-                                  )
-                                );
-                            }
-                            buffer.storeObject(message == null
-                              ? new Response(
+            enqueue(buffer.retrieveObjects());
+        return success;
+    }
+
+    private void enqueue(List<Object> objects) {
+        if (objects.isEmpty()) return;
+        boolean schedule;
+        inboundLock.lock();
+        try {
+            inbound.addAll(objects);
+            isReadingPaused = inbound.size() >= Config.MAX_PENDING_REQUESTS;
+            schedule = !isScheduled;
+            isScheduled = true;
+        } finally {
+            inboundLock.unlock();
+        }
+        if (schedule)
+            server.getPipeline().schedule(this);
+    }
+
+    public boolean isReadingPaused() {
+        inboundLock.lock();
+        try {
+            return isReadingPaused;
+        } finally {
+            inboundLock.unlock();
+        }
+    }
+
+    public void awaitReadable() throws InterruptedException {
+        inboundLock.lock();
+        try {
+            while (isReadingPaused && !closed.get())
+                inboundDrained.await();
+        } finally {
+            inboundLock.unlock();
+        }
+    }
+
+    private void resumeReading() {
+        var reactor = this.reactor;
+        if (reactor != null)
+            reactor.execute(() -> {
+                var key = this.key;
+                try {
+                    if (key != null)
+                        key.interestOpsOr(SelectionKey.OP_READ);
+                } catch (CancelledKeyException ignored) {}
+            });
+    }
+
+    // Runs on a command worker, the pipeline schedules a client on at most one worker at a time
+    public void process() {
+        var isDrained = false;
+        try {
+            for (;;) {
+                Object obj;
+                var resume = false;
+                inboundLock.lock();
+                try {
+                    obj = inbound.poll();
+                    if (obj == null) {
+                        isScheduled = false;
+                        isDrained = true;
+                        return;
+                    }
+                    if (isReadingPaused && inbound.size() < Config.MAX_PENDING_REQUESTS / 2) {
+                        isReadingPaused = false;
+                        inboundDrained.signalAll();
+                        resume = true;
+                    }
+                } finally {
+                    inboundLock.unlock();
+                }
+                if (resume)
+                    resumeReading();
+                try {
+                    var start = System.nanoTime();
+                    try {
+                        handle(obj);
+                        submitPublished();
+                    } catch (RuntimeException e) {
+                        // A well framed request can still carry a payload its command cannot use
+                        if (!(obj instanceof Request request)) throw e;
+                        buffer.storeObject(new Response(ResponseType.InvalidCommand, "Malformed request.", request.getId()));
+                    }
+                    if (obj instanceof Request request)
+                        metrics.recordRequest(request.getType(), System.nanoTime() - start);
+                    requestWrite();
+                } catch (ClosedChannelException e) {
+                    ConsoleLog.info(message__connection_terminated, localPort, address, foreignPort);
+                    close();
+                } catch (IOException | RuntimeException e) {
+                    ConsoleLog.info(message__connection_dropped, localPort, address, foreignPort);
+                    close();
+                }
+            }
+        } finally {
+            // Whatever escapes a request must not leave the client scheduled with nobody draining it
+            if (!isDrained) {
+                inboundLock.lock();
+                try {
+                    isScheduled = false;
+                } finally {
+                    inboundLock.unlock();
+                }
+            }
+        }
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    private synchronized void handle(Object obj) throws IOException {
+        if (closed.get()) return;
+        if (obj == CLOSING)
+            close();
+        else if (obj instanceof Catchup catchup)
+            continueCatchup(catchup);
+        else if (obj instanceof Request request) {
+            var id = request.getId();
+            switch (request.getType()) {
+                case Ping -> buffer.storeObject(new Response(ResponseType.Echo, null, id));
+                case Stats -> buffer.storeObject(new Response(ResponseType.Stats, metrics.snapshot(), id));
+                case Interest, Withdraw -> buffer.storeObject(
+                  new Response(ResponseType.UnknownCommand, "Only cluster peers announce interest.", id)
+                );
+                case Compression -> {
+                    var algorithm = (String) request.getPayload();
+                    if (Compression.NONE.equals(algorithm))
+                        isDeflating = false;
+                    else if (Compression.DEFLATE.equals(algorithm) && Compression.isAvailable(buffer.codec()))
+                        isDeflating = true;
+                    else {
+                        buffer.storeObject(
+                          new Response(ResponseType.InvalidCommand, "Compression " + algorithm + " is not supported.", id)
+                        );
+                        return;
+                    }
+                    buffer.storeObject(new Response(ResponseType.Compression, algorithm, id));
+                }
+                case Aliases -> {
+                    var mode = (String) request.getPayload();
+                    if (!"on".equals(mode) && !"off".equals(mode)) {
+                        buffer.storeObject(new Response(ResponseType.InvalidCommand, "Aliases are either on or off.", id));
+                        return;
+                    }
+                    isAliasing = "on".equals(mode);
+                    buffer.storeObject(new Response(ResponseType.Aliases, mode, id));
+                }
+                case Disconnect -> {
+                    // Leaving on purpose ends the session, a dropped connection may still resume it
+                    if (token != null)
+                        server.getSessions().revoke(token);
+                    throw new ClosedChannelException();
+                }
+                case Login -> {
+                    if (user != null) {
+                        buffer.storeObject(
+                          new Response(ResponseType.InvalidCommand, "You are already logged in.", id)
+                        );
+                        return;
+                    }
+                    user = server.loginUser((Credentials) request.getPayload());
+                    if (user != null) {
+                        ConsoleLog.debug(message__signed_in, localPort, address, foreignPort, user.username());
+                    }
+                    buffer.storeObject(user == null
+                        ? new Response(
+                            ResponseType.InvalidCredentials,
+                            "Login failed, invalid username or password.", id
+                        )
+                        : new Response(
+                            ResponseType.AuthorizationSuccess,
+                            new Pair<>(
+                              "Login successful!",
+                              issueSession()
+                            ), id
+                        )
+                    );
+                    // Subscriptions resume where the previous session of the user stopped
+                    if (user != null)
+                        resumeSubscriptions();
+                }
+                case Resume -> {
+                    if (user != null) {
+                        buffer.storeObject(
+                          new Response(ResponseType.InvalidCommand, "You are already logged in.", id)
+                        );
+                        return;
+                    }
+                    var entry = server.getSessions().resume((String) request.getPayload());
+                    if (entry == null) {
+                        buffer.storeObject(
+                          new Response(ResponseType.InvalidCredentials, "Session expired, log in again.", id)
+                        );
+                        return;
+                    }
+                    user = entry.user();
+                    token = entry.session().token();
+                    ConsoleLog.debug(message__resumed, localPort, address, foreignPort, user.username());
+                    buffer.storeObject(
+                      new Response(ResponseType.AuthorizationSuccess, new Pair<>("Session resumed!", entry.session()), id)
+                    );
+                    resumeSubscriptions();
+                }
+                case Register -> {
+                    if (user != null) {
+                        buffer.storeObject(
+                          new Response(ResponseType.InvalidCommand, "You are already logged in.", id)
+                        );
+                        return;
+                    }
+                    var credentials = (Credentials) request.getPayload();
+                    user = server.registerUser(credentials);
+                    if (user != null) {
+                        ConsoleLog.debug(message__registered, localPort, address, foreignPort, user.username());
+                        server.getCluster().register(credentials);
+                    }
+                    buffer.storeObject(user == null
+                      ? new Response(
+                        ResponseType.UsernameTaken,
+                        "Registration failed, username already exists.", id
+                      )
+                      : new Response(
+                        ResponseType.RegistrationSuccess,
+                        new Pair<>(
+                          "Registration successful! You can now log in.",
+                          issueSession()
+                        ), id
+                      )
+                    );
+                }
+                case Publish -> {
+                    if (user == null) {
+                        buffer.storeObject(new Response(ResponseType.AccessDenied, "You are not logged in.", id));
+                        return;
+                    }
+                    var data = (Pair<String, String>) request.getPayload();
+                    Post message;
+                    try {
+                        message = server.addMessage(data.getFirst(), data.getSecond(), user);
+                    } catch (IOException e) {
+                        buffer.storeObject(new Response(ResponseType.InvalidCommand, "The message could not be stored.", id));
+                        return;
+                    }
+                    publish(message, id);
+                }
+                case PublishAliased -> {
+                    if (user == null) {
+                        buffer.storeObject(new Response(ResponseType.AccessDenied, "You are not logged in.", id));
+                        return;
+                    }
+                    var aliased = (Aliased) request.getPayload();
+                    // Only aliases announced to this connection are accepted
+                    var topic = isAnnounced(aliased.alias()) ? server.getTopic(aliased.alias()) : null;
+                    if (topic == null) {
+                        buffer.storeObject(new Response(ResponseType.InvalidCommand, "Unknown topic alias.", id));
+                        return;
+                    }
+                    Post message;
+                    try {
+                        message = server.addMessage(topic, aliased.body(), user, new Date());
+                    } catch (IOException e) {
+                        buffer.storeObject(new Response(ResponseType.InvalidCommand, "The message could not be stored.", id));
+                        return;
+                    }
+                    publish(message, id);
+                }
+                case Subscribe -> {
+                    if (user == null) {
+                        buffer.storeObject(new Response(ResponseType.AccessDenied, "You are not logged in.", id));
+                        return;
+                    }
+                    var title = (String) request.getPayload();
+                    if (TopicTrie.isFilter(title)) {
+                        if (!TopicTrie.isValidFilter(title)) {
+                            buffer.storeObject(
+                              new Response(
                                 ResponseType.InvalidCommand,
-                                "Title may not contain ':', both title and body cannot be empty."
-                              )
-                              : new Response(
-                                ResponseType.PublishedMessage,
-                                "You message has been published."
-                              )
-                            );
-                        }
-                        case Subscribe -> {
-                            if (user == null) {
-                                buffer.storeObject(new Response(ResponseType.AccessDenied, "You are not logged in."));
-                                return success;
-                            }
-                            var title = (String) request.getPayload();
-                            var topic = server.subscribeUser(title, user);
-                            if (topic != null)
-                                printMessage(
-                                  String.format(
-                                    GRAY + '[' + YELLOW + "%d" + GRAY + ']' + RESET + ": " + PURPLE + "Client " +
-                                      BLUE + "%s" + PURPLE + " subscribed to topic " + BLUE + "%s" + GRAY + '.',
-                                    localPort, user.username(), topic.getTitle()
-                                  )
-                                );
-                            buffer.storeObject(topic == null
-                              ? new Response(ResponseType.UnknownTopic, "Unknown topic.")
-                              : new Response(
-                                ResponseType.TopicSubscribed, "You have successfully subscribed to topic."
+                                "Wildcards must take up a whole level, '#' only the last one.", id
                               )
                             );
+                            return;
                         }
+                        server.subscribeFilter(title, user);
+                        interest(title);
+                        server.getRoutes().addFilter(title, this);
+                        ConsoleLog.debug(message__subscribed, localPort, user.username(), title);
+                        buffer.storeObject(
+                          new Response(
+                            ResponseType.TopicSubscribed,
+                            "You have successfully subscribed to every topic matching the filter.", id
+                          )
+                        );
+                        return;
+                    }
+                    var topic = server.subscribeUser(title, user);
+                    interest(title);
+                    if (isAliasing)
+                        announce(topic);
+                    synchronized (topic) {
+                        user.position(topic).accumulateAndGet(topic.nextOffset(), Math::max);
+                        if (!catchingUp.contains(topic))
+                            server.getRoutes().add(topic, this);
+                    }
+                    ConsoleLog.debug(message__subscribed, localPort, user.username(), topic.getTitle());
+                    buffer.storeObject(
+                      new Response(ResponseType.TopicSubscribed, "You have successfully subscribed to topic.", id)
+                    );
+                }
+                case Replay -> {
+                    if (user == null) {
+                        buffer.storeObject(new Response(ResponseType.AccessDenied, "You are not logged in.", id));
+                        return;
                     }
-                } else buffer.storeObject(new Response(ResponseType.InvalidCommand, null));
+                    var cursor = (Cursor) request.getPayload();
+                    if (server.getTopic(cursor.getTopic()) == null) {
+                        buffer.storeObject(new Response(ResponseType.UnknownTopic, "Unknown topic.", id));
+                        return;
+                    }
+                    var topic = server.subscribeUser(cursor.getTopic(), user);
+                    interest(topic.getTitle());
+                    if (isAliasing)
+                        announce(topic);
+                    if (catchingUp.contains(topic)) {
+                        buffer.storeObject(
+                          new Response(ResponseType.InvalidCommand, "This topic is already being replayed.", id)
+                        );
+                        return;
+                    }
+                    var from = Math.max(server.oldestOffset(topic), switch (cursor.getKind()) {
+                        case Offset -> cursor.getValue();
+                        case Timestamp -> topic.offsetAt(cursor.getValue());
+                        case LastDelivered -> user.position(topic).get();
+                    });
+                    ConsoleLog.debug(message__replaying, localPort, user.username(), topic.getTitle(), from);
+                    buffer.storeObject(
+                      new Response(
+                        ResponseType.TopicSubscribed,
+                        String.format(
+                          "Replaying %d messages from offset %d.", Math.max(0, topic.nextOffset() - from), from
+                        ), id
+                      )
+                    );
+                    startCatchup(topic, from, true);
+                }
             }
-        return success;
+        } else buffer.storeObject(new Response(ResponseType.InvalidCommand, null));
+    }
+
+    private void publish(Post message, int id) throws IOException {
+        if (message != null) {
+            var frame = SharedFrame.encode(
+              buffer.codec(), new Response(ResponseType.NewPublication, Delivery.of(message))
+            );
+            publishedFrame = frame;
+            published = message;
+            ConsoleLog.debug(message__published, localPort, user.username(), message.topic().getTitle());
+            // The publisher may go on publishing by alias
+            if (isAliasing)
+                announce(message.topic());
+        }
+        buffer.storeObject(message == null
+          ? new Response(
+            ResponseType.InvalidCommand,
+            "Title may not contain wildcards, both title and body cannot be empty.", id
+          )
+          : new Response(
+            ResponseType.PublishedMessage,
+            "You message has been published.", id
+          )
+        );
+    }
+
+    private Session issueSession() {
+        var session = server.getSessions().issue(user);
+        token = session.token();
+        return session;
+    }
+
+    private void resumeSubscriptions() throws IOException {
+        var subscriptions = user.getSubscriptions();
+        for (var topic : subscriptions) {
+            interest(topic.getTitle());
+            startCatchup(topic, user.position(topic).get(), false);
+        }
+        // Topics matching a filter catch up from their last delivery, or from the filter subscription if
+        // they were never delivered, the filter is routed only once they are marked as catching up
+        var catchups = new ArrayList<Catchup>();
+        var filters = user.getFilters();
+        // A topic matching several filters counts from the oldest of them
+        var matched = new HashMap<Topic, Long>();
+        for (var filter : filters.entrySet())
+            server.findTopics(filter.getKey(), topic -> {
+                if (!subscriptions.contains(topic))
+                    matched.merge(topic, filter.getValue(), Math::min);
+            });
+        for (var match : matched.entrySet()) {
+            var topic = match.getKey();
+            if (!catchingUp.add(topic)) continue;
+            var position = user.existingPosition(topic);
+            catchups.add(
+              new Catchup(topic, position != null ? position.get() : topic.offsetAt(match.getValue()), false)
+            );
+        }
+        for (var filter : filters.keySet()) {
+            interest(filter);
+            server.getRoutes().addFilter(filter, this);
+        }
+        for (var catchup : catchups)
+            continueCatchup(catchup);
+    }
+
+    private void interest(String title) {
+        synchronized (interests) {
+            if (!closed.get() && interests.add(title))
+                server.getCluster().announce(title);
+        }
+    }
+
+    private void startCatchup(Topic topic, long from, boolean isRequested) throws IOException {
+        if (!catchingUp.add(topic)) return;
+        // Live delivery stops until the backlog is streamed, publications in between become part of it
+        server.getRoutes().removeAll(List.of(topic), this);
+        continueCatchup(new Catchup(topic, from, isRequested));
+    }
+
+    private void continueCatchup(Catchup catchup) throws IOException {
+        // Posts evicted from memory are read back from the log, whatever it no longer has is skipped
+        var batch = catchup.next < catchup.topic.firstOffset()
+          ? server.readLog(catchup.topic, catchup.next, Config.REPLAY_BATCH_SIZE)
+          : List.<Post>of();
+        if (batch.isEmpty())
+            batch = catchup.topic.getMessages(catchup.next, Config.REPLAY_BATCH_SIZE);
+        var isAliasing = this.isAliasing;
+        if (isAliasing && !batch.isEmpty())
+            announce(catchup.topic);
+        for (var post : batch) {
+            var response = new Response(
+              ResponseType.NewPublication, isAliasing ? Delivery.aliased(post) : Delivery.of(post)
+            );
+            if (isDeflating)
+                storeDeflated(response, post);
+            else
+                buffer.storeObject(response, post);
+        }
+        var first = batch.isEmpty() ? catchup.topic.firstOffset() : batch.get(0).offset();
+        if (first > catchup.next)
+            catchup.skipped += first - catchup.next;
+        catchup.next = batch.isEmpty()
+          ? Math.max(catchup.next, catchup.topic.firstOffset())
+          : batch.get(batch.size() - 1).offset() + 1;
+        catchup.replayed += batch.size();
+        synchronized (catchup.topic) {
+            if (catchup.next >= catchup.topic.nextOffset()) {
+                // Appends take the topic lock, every later publication reaches the route added here
+                liveFrom.put(catchup.topic, Math.min(catchup.next, catchup.topic.nextOffset()));
+                // Topics only matched by a filter keep being routed through it
+                if (user.getSubscriptions().contains(catchup.topic))
+                    server.getRoutes().add(catchup.topic, this);
+                catchingUp.remove(catchup.topic);
+                if (catchup.replayed > 0 || catchup.skipped > 0 || catchup.isRequested)
+                    buffer.storeObject(
+                      new Response(
+                        ResponseType.ReplayCompleted,
+                        catchup.skipped > 0
+                          ? String.format(
+                              "Replayed %d messages of %s, %d older messages were no longer available, live delivery resumed.",
+                              catchup.replayed, catchup.topic.getTitle(), catchup.skipped
+                            )
+                          : String.format(
+                              "Replayed %d messages of %s, live delivery resumed.",
+                              catchup.replayed, catchup.topic.getTitle()
+                            )
+                      )
+                    );
+                return;
+            }
+        }
+        if (buffer.pendingBytes() <= Config.REPLAY_LOW_WATER_BYTES) {
+            enqueue(List.of(catchup));
+            return;
+        }
+        stalledCatchup.set(catchup);
+        // The writer may have drained everything before the catch-up was parked
+        if (buffer.pendingBytes() <= Config.REPLAY_LOW_WATER_BYTES)
+            resumeCatchup();
+    }
+
+    // Stores the alias of the topic unless this connection already knows it
+    private void announce(Topic topic) throws IOException {
+        var alias = topic.alias();
+        if (alias < 0) return;
+        synchronized (announced) {
+            if (announced.get(alias)) return;
+            buffer.storeObject(new Response(ResponseType.TopicAlias, new TopicAlias(alias, topic.getTitle())));
+            announced.set(alias);
+        }
+    }
+
+    private boolean isAnnounced(int alias) {
+        synchronized (announced) {
+            return alias >= 0 && announced.get(alias);
+        }
+    }
+
+    // Replays belong to a single connection, so their frames are compressed here rather than on a lane
+    private void storeDeflated(Response response, Post post) throws IOException {
+        var frame = SharedFrame.encode(buffer.codec(), response);
+        var deflated = Compression.deflate(frame, metrics);
+        if (deflated == null)
+            buffer.storeFrame(frame, post, false);
+        else {
+            buffer.storeFrame(deflated, post, false);
+            deflated.release();
+        }
+        frame.release();
+    }
+
+    private void advance(Post post) {
+        var user = this.user;
+        if (user != null)
+            user.position(post.topic()).accumulateAndGet(post.offset() + 1, Math::max);
+    }
+
+    private void resumeCatchup() throws IOException {
+        var catchup = stalledCatchup.getAndSet(null);
+        if (catchup != null)
+            enqueue(List.of(catchup));
+    }
+
+    public boolean send() throws IOException {
+        var buffer = this.buffer;
+        if (closed.get() || buffer == null) return false;
+        var before = buffer.bytesWritten();
+        var pending = buffer.write(channel);
+        metrics.recordWrite(buffer.bytesWritten() - before);
+        if (stalledCatchup.get() != null && buffer.pendingBytes() <= Config.REPLAY_LOW_WATER_BYTES)
+            resumeCatchup();
+        return pending;
+    }
+
+    public void attach(TransmissionHandler reactor, SelectionKey key) {
+        this.reactor = reactor;
+        this.key = key;
+        if (writeRequested.get())
+            enableWrite();
     }
 
-    public synchronized boolean send() throws IOException {
-        return !closed.get() && buffer.write(channel);
+    public void attach(Thread writer) {
+        this.writer = writer;
+    }
+
+    // Runs on the command worker after handle, it may wait for room in the fan-out lane
+    private void submitPublished() throws IOException {
+        var frame = publishedFrame;
+        var message = published;
+        publishedFrame = null;
+        published = null;
+        if (frame == null) return;
+        var server = this.server;
+        if (server == null) {
+            frame.release();
+            return;
+        }
+        try {
+            server.getPipeline().publish(frame, message, this);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    public boolean deliver(Publication publication) {
+        var buffer = this.buffer;
+        if (closed.get() || buffer == null) return false;
+        var message = publication.message();
+        var topic = message.topic();
+        if (catchingUp.contains(topic)) return false;
+        var from = liveFrom.get(topic);
+        if (from != null && message.offset() < from) return false;
+        var isAliasing = this.isAliasing && topic.alias() >= 0;
+        if (isAliasing && !isAnnounced(topic.alias()))
+            try {
+                announce(topic);
+            } catch (IOException e) {
+                return false;
+            }
+        var frame = publication.frame(isAliasing, isDeflating, metrics);
+        if (!admit(buffer, publication, frame.size())) return false;
+        var entry = buffer.storeFrame(frame, publication);
+        if (Config.SLOW_CONSUMER_POLICY == SlowConsumerPolicy.Conflate)
+            latest.put(topic, entry);
+        metrics.recordDelivery();
+        requestWrite();
+        return true;
+    }
+
+    private static boolean isOverLimit(TransmissionBuffer buffer, int size) {
+        return buffer.pendingFrames() >= Config.OUTBOUND_MAX_MESSAGES ||
+          buffer.pendingBytes() + size > Config.OUTBOUND_MAX_BYTES;
+    }
+
+    private boolean admit(TransmissionBuffer buffer, Publication publication, int size) {
+        if (!isOverLimit(buffer, size)) {
+            overLimitSince = 0;
+            return true;
+        }
+        var policy = Config.SLOW_CONSUMER_POLICY;
+        switch (policy) {
+            case DropNewest -> {
+                shed(policy, publication);
+                return false;
+            }
+            case DropOldest, Conflate -> {
+                if (policy == SlowConsumerPolicy.Conflate) {
+                    var previous = latest.get(publication.message().topic());
+                    if (previous != null && buffer.evict(previous))
+                        shed(policy, (Publication) previous.tag());
+                }
+                while (isOverLimit(buffer, size)) {
+                    var evicted = buffer.evictOldest();
+                    if (evicted == null) {
+                        // Only responses and frames already being written are left
+                        shed(policy, publication);
+                        return false;
+                    }
+                    shed(policy, (Publication) evicted.tag());
+                }
+                return true;
+            }
+            case Disconnect -> {
+                var now = System.currentTimeMillis();
+                if (overLimitSince == 0)
+                    overLimitSince = now;
+                else if (now - overLimitSince >= Config.SLOW_CONSUMER_GRACE_MILLIS && !isClosing.getAndSet(true)) {
+                    policy.recordDisconnect();
+                    ConsoleLog.info(message__slow_consumer, localPort, address, foreignPort);
+                    closeLater();
+                }
+                shed(policy, publication);
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static void shed(SlowConsumerPolicy policy, Publication publication) {
+        policy.recordShed();
+        var publisher = publication.publisher();
+        if (publisher != null && publication.markShed())
+            publisher.notifyShed(publication.message());
+    }
+
+    private void notifyShed(Post message) {
+        var buffer = this.buffer;
+        if (closed.get() || buffer == null) return;
+        buffer.storeObject(
+          new Response(
+            ResponseType.PublicationShed,
+            String.format(
+              "Your message in %s was dropped for a subscriber that could not keep up.", message.topic().getTitle()
+            )
+          )
+        );
+        requestWrite();
+    }
+
+    public void requestWrite() {
+        if (writeRequested.getAndSet(true)) return;
+        var writer = this.writer;
+        var reactor = this.reactor;
+        if (writer != null)
+            LockSupport.unpark(writer);
+        else if (reactor != null) {
+            if (reactor.inEventLoop())
+                enableWrite();
+            else
+                reactor.execute(this::enableWrite);
+        }
+    }
+
+    public boolean awaitWrite() {
+        while (!writeRequested.getAndSet(false)) {
+            if (closed.get()) return false;
+            LockSupport.park(this);
+        }
+        return !closed.get();
+    }
+
+    private void enableWrite() {
+        writeRequested.set(false);
+        var key = this.key;
+        try {
+            if (key != null)
+                key.interestOpsOr(SelectionKey.OP_WRITE);
+        } catch (CancelledKeyException ignored) {}
+    }
+
+    private void closeLater() {
+        inboundLock.lock();
+        try {
+            inbound.add(CLOSING);
+            if (isScheduled) return;
+            isScheduled = true;
+        } finally {
+            inboundLock.unlock();
+        }
+        var server = this.server;
+        if (server != null)
+            server.getPipeline().schedule(this);
     }
 
     public synchronized void close() {
-        if (closed.get()) return;
+        if (closed.getAndSet(true)) return;
+        metrics.recordDisconnect();
         try {
             channel.close();
         } catch (IOException ignored) {}
         server.removeClient(this);
+        if (user != null) {
+            server.getRoutes().removeAll(user.getSubscriptions(), this);
+            server.getRoutes().removeFilters(user.getFilters().keySet(), this);
+        }
+        synchronized (interests) {
+            for (var title : interests)
+                server.getCluster().withdraw(title);
+            interests.clear();
+        }
+        buffer.release();
+        stalledCatchup.set(null);
+        latest.clear();
+        if (reactor != null)
+            reactor.connectionClosed();
+        if (writer != null)
+            LockSupport.unpark(writer);
+        inboundLock.lock();
+        try {
+            inbound.clear();
+            inboundDrained.signalAll();
+        } finally {
+            inboundLock.unlock();
+        }
         buffer = null;
-        channel = null;
+        key = null;
+        reactor = null;
+        writer = null;
         server = null;
-        closed.set(true);
     }
 
 }
\ No newline at end of file
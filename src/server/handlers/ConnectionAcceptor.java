@@ -0,0 +1,67 @@
+package server.handlers;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+
+import server.Config;
+import server.MessagingServer;
+import server.util.ConsoleLog;
+
+import static server.util.Templates.*;
+
+
+public class ConnectionAcceptor implements Runnable {
+
+    private final Selector selector;
+    private final MessagingServer server;
+    private final TransmissionHandler[] reactors;
+    private int nextReactor = 0;
+
+    public ConnectionAcceptor(Selector selector, MessagingServer instance, TransmissionHandler[] reactors) {
+        this.selector = selector;
+        this.server = instance;
+        this.reactors = reactors;
+    }
+
+    private TransmissionHandler pickReactor() {
+        // Least loaded reactor wins, scanning from a rotating start so ties are spread round-robin
+        var best = reactors[nextReactor];
+        for (var i = 1; i < reactors.length; i++) {
+            var reactor = reactors[(nextReactor + i) % reactors.length];
+            if (reactor.load() < best.load())
+                best = reactor;
+        }
+        nextReactor = (nextReactor + 1) % reactors.length;
+        return best;
+    }
+
+    @Override
+    public void run() {
+        while (server.listening()) {
+            try {
+                if (selector.select(Config.SELECTOR_TIMEOUT_MILLIS) == 0) {
+                    if (!server.listening()) return;
+                    ConsoleLog.tick(
+                      "Waiting for " + (server.connections() > 0 ? "new connections or events" : "connection requests")
+                    );
+                    continue;
+                }
+            } catch (IOException e) {
+                ConsoleLog.error(error__transmission);
+                server.stop();
+                return;
+            }
+            Iterator<SelectionKey> keyIter = selector.selectedKeys().iterator();
+            while (keyIter.hasNext()) {
+                if (!server.listening()) return;
+                var key = keyIter.next();
+                keyIter.remove();
+                if (key.isValid() && key.isAcceptable())
+                    pickReactor().handleAccept(key);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,30 @@
+package server.handlers;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+// Applied to publications delivered to a client whose outbound queue is full
+public enum SlowConsumerPolicy {
+
+    DropOldest, DropNewest, Conflate, Disconnect;
+
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+
+    void recordShed() {
+        shed.increment();
+    }
+
+    void recordDisconnect() {
+        disconnects.increment();
+    }
+
+    public long shed() {
+        return shed.sum();
+    }
+
+    public long disconnects() {
+        return disconnects.sum();
+    }
+
+}
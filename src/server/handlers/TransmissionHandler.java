@@ -3,13 +3,15 @@ package server.handlers;
 import java.io.IOException;
 import java.nio.channels.*;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import shared.protocols.TCP;
 
-import static shared.util.Styling.*;
-
 import server.Config;
 import server.MessagingServer;
+import server.util.ConsoleLog;
 
 import static server.util.Templates.*;
 
@@ -18,42 +20,77 @@ public class TransmissionHandler implements TCP, Runnable {
 
     private final Selector selector;
     private final MessagingServer server;
+    private final AtomicBoolean isRunning = new AtomicBoolean(true);
+    private final AtomicBoolean isWakingUp = new AtomicBoolean(false);
+    private final AtomicInteger load = new AtomicInteger(0);
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile Thread thread = null;
 
-    public TransmissionHandler(Selector selector, MessagingServer instance) {
-        this.selector = selector;
+    public TransmissionHandler(MessagingServer instance) throws IOException {
+        this.selector = Selector.open();
         this.server = instance;
     }
 
+    public int load() {
+        return load.get();
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (!inEventLoop() && isWakingUp.compareAndSet(false, true))
+            selector.wakeup();
+    }
+
+    public void shutdown() {
+        isRunning.set(false);
+        selector.wakeup();
+    }
+
+    void connectionClosed() {
+        load.decrementAndGet();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null)
+            task.run();
+    }
+
     @Override
     public void run() {
-        while (server.listening()) {
-            try {
-                if (selector.select(Config.SELECTOR_TIMEOUT_MILLIS) == 0) {
+        thread = Thread.currentThread();
+        try {
+            while (isRunning.get() && server.listening()) {
+                isWakingUp.set(false);
+                if (tasks.isEmpty())
+                    selector.select(Config.SELECTOR_TIMEOUT_MILLIS);
+                else
+                    selector.selectNow();
+                runTasks();
+                Iterator<SelectionKey> keyIter = selector.selectedKeys().iterator();
+                while (keyIter.hasNext()) {
                     if (!server.listening()) return;
-                    tickLoader(
-                      "Waiting for " + (server.connections() > 0 ? "new connections or events" : "connection requests")
-                    );
-                    continue;
-                }
-            } catch (IOException e) {
-                printError(error__transmission.val);
-                server.stop();
-                return;
-            }
-            Iterator<SelectionKey> keyIter = selector.selectedKeys().iterator();
-            while (keyIter.hasNext()) {
-                if (!server.listening()) return;
-                var key = keyIter.next();
-                if (key.isAcceptable())
-                    handleAccept(key);
-                else {
-                    if (key.isReadable())
-                        handleRead(key);
-                    if (key.isValid() && key.isWritable())
-                        handleWrite(key);
+                    var key = keyIter.next();
+                    keyIter.remove();
+                    try {
+                        if (key.isValid() && key.isReadable())
+                            handleRead(key);
+                        if (key.isValid() && key.isWritable())
+                            handleWrite(key);
+                    } catch (CancelledKeyException ignored) {}
                 }
-                keyIter.remove();
             }
+        } catch (IOException e) {
+            ConsoleLog.error(error__transmission);
+            server.stop();
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
         }
     }
 
@@ -62,24 +99,27 @@ public class TransmissionHandler implements TCP, Runnable {
         try {
             var serverChannel = (ServerSocketChannel) key.channel();
             var channel = serverChannel.accept();
+            if (channel == null) return;
             var client = new ClientHandler(
               channel.socket().getInetAddress(),
               channel.socket().getPort(),
               serverChannel.socket().getLocalPort(),
               channel, server
             );
-            channel.configureBlocking(false).register(
-              key.selector(), SelectionKey.OP_READ, client
-            );
-            printMessage(
-              String.format(
-                message__new_connection.val,
-                client.localPort, client.address, client.foreignPort
-              )
-            );
+            channel.configureBlocking(false);
+            load.incrementAndGet();
+            execute(() -> {
+                try {
+                    client.attach(this, channel.register(selector, SelectionKey.OP_READ, client));
+                } catch (ClosedChannelException e) {
+                    load.decrementAndGet();
+                    client.close();
+                }
+            });
+            ConsoleLog.info(message__new_connection, client.localPort, client.address, client.foreignPort);
             server.addClient(client);
         } catch (IOException e) {
-            printMessage(message__connection_unsuccessful.data);
+            ConsoleLog.info(message__connection_unsuccessful);
         }
     }
 
@@ -87,24 +127,16 @@ public class TransmissionHandler implements TCP, Runnable {
     public void handleRead(SelectionKey key) {
         var client = (ClientHandler) key.attachment();
         try {
-            if(client.receive())
-                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            client.receive();
+            if (client.isReadingPaused())
+                key.interestOpsAnd(~SelectionKey.OP_READ);
             return;
         } catch (ClosedChannelException e) {
-            printMessage(
-              String.format(
-                message__connection_terminated.val,
-                client.localPort, client.address, client.foreignPort
-              )
-            );
+            if (client.isClosed()) return;
+            ConsoleLog.info(message__connection_terminated, client.localPort, client.address, client.foreignPort);
             server.removeClient(client);
         } catch (IOException e) {
-            printMessage(
-              String.format(
-                message__connection_dropped.val,
-                client.localPort, client.address, client.foreignPort
-              )
-            );
+            ConsoleLog.info(message__connection_dropped, client.localPort, client.address, client.foreignPort);
             server.removeClient(client);
         }
         client.close();
@@ -116,17 +148,12 @@ public class TransmissionHandler implements TCP, Runnable {
         var client = (ClientHandler) key.attachment();
         try {
             if (!client.send())
-                key.interestOps(SelectionKey.OP_READ);
+                key.interestOpsAnd(~SelectionKey.OP_WRITE);
         } catch (IOException e) {
-            printMessage(
-              String.format(
-                message__connection_dropped.val,
-                client.localPort, client.address, client.foreignPort
-              )
-            );
+            ConsoleLog.info(message__connection_dropped, client.localPort, client.address, client.foreignPort);
             client.close();
             key.cancel();
         }
     }
 
-}
\ No newline at end of file
+}
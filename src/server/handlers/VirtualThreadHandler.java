@@ -0,0 +1,86 @@
+package server.handlers;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import server.MessagingServer;
+import server.util.ConsoleLog;
+
+import static server.util.Templates.*;
+
+
+public class VirtualThreadHandler implements Runnable {
+
+    private final List<ServerSocketChannel> channels;
+    private final MessagingServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public VirtualThreadHandler(List<ServerSocketChannel> channels, MessagingServer instance) {
+        this.channels = channels;
+        this.server = instance;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void run() {
+        for (var channel : channels)
+            executor.execute(() -> accept(channel));
+    }
+
+    private void accept(ServerSocketChannel serverChannel) {
+        while (server.listening()) {
+            try {
+                var channel = serverChannel.accept();
+                var client = new ClientHandler(
+                  channel.socket().getInetAddress(),
+                  channel.socket().getPort(),
+                  serverChannel.socket().getLocalPort(),
+                  channel, server
+                );
+                ConsoleLog.info(message__new_connection, client.localPort, client.address, client.foreignPort);
+                server.addClient(client);
+                executor.execute(() -> serve(client));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                ConsoleLog.info(message__connection_unsuccessful);
+            }
+        }
+    }
+
+    private void serve(ClientHandler client) {
+        var writer = Thread.ofVirtual().unstarted(() -> drain(client));
+        client.attach(writer);
+        writer.start();
+        try {
+            while (client.receive())
+                client.awaitReadable();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedChannelException e) {
+            if (client.isClosed()) return;
+            ConsoleLog.info(message__connection_terminated, client.localPort, client.address, client.foreignPort);
+        } catch (IOException e) {
+            if (client.isClosed()) return;
+            ConsoleLog.info(message__connection_dropped, client.localPort, client.address, client.foreignPort);
+        }
+        client.close();
+    }
+
+    private void drain(ClientHandler client) {
+        try {
+            while (client.awaitWrite())
+                client.send();
+        } catch (IOException e) {
+            client.close();
+        }
+    }
+
+}
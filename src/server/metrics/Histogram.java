@@ -0,0 +1,67 @@
+package server.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+// Log-linear buckets in the style of HdrHistogram, every power of two is split into 32 buckets
+// so recorded values keep about 3% precision over the whole range of a long
+public class Histogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public record Snapshot(long count, long sum, long max, long[] counts) {
+
+        public long mean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        // Highest value of the bucket holding the percentile, never above the recorded maximum
+        public long percentile(double percentile) {
+            if (count == 0) return 0;
+            var rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (var i = 0; i < counts.length; i++)
+                if ((seen += counts[i]) >= rank)
+                    return Math.min(highestOf(i), max);
+            return max;
+        }
+
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_COUNT) return (int) Math.max(value, 0);
+        var shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) - SUB_COUNT);
+    }
+
+    static long highestOf(int index) {
+        if (index < SUB_COUNT) return index;
+        var shift = index / SUB_COUNT - 1;
+        return ((long) (SUB_COUNT + index % SUB_COUNT) << shift) + (1L << shift) - 1;
+    }
+
+    public void record(long value) {
+        value = Math.max(value, 0);
+        counts.incrementAndGet(indexOf(value));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    // Taken while recording continues, the count is that of the copied buckets
+    public Snapshot snapshot() {
+        var copy = new long[BUCKETS];
+        long total = 0;
+        for (var i = 0; i < BUCKETS; i++)
+            total += copy[i] = counts.get(i);
+        return new Snapshot(total, sum.sum(), max.get(), copy);
+    }
+
+}
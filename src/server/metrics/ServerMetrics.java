@@ -0,0 +1,281 @@
+package server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import shared.models.communication.RequestType;
+import shared.models.data.Stats;
+import shared.models.data.Topic;
+
+import server.Config;
+
+
+// Counters are striped so recording never contends, reading them sums the stripes
+public class ServerMetrics implements ServerMetricsMXBean {
+
+    private static final RequestType[] requestTypes = RequestType.values();
+    private static final AtomicInteger instances = new AtomicInteger(0);
+
+    // Known once the server registers the metrics, it has no connections before that
+    private volatile IntSupplier connections = () -> 0;
+    private final IntSupplier peers;
+    private final Supplier<Collection<Topic>> topics;
+    private final long startedAt = System.currentTimeMillis();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder deliveries = new LongAdder();
+    private final LongAdder peerForwards = new LongAdder();
+    private final LongAdder peerDrops = new LongAdder();
+    private final LongAdder peerReceived = new LongAdder();
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder compressionSkipped = new LongAdder();
+    private final LongAdder compressionBytesIn = new LongAdder();
+    private final LongAdder compressionBytesOut = new LongAdder();
+    private final LongAdder compressionNanos = new LongAdder();
+    private final LongAdder[] requests = new LongAdder[requestTypes.length];
+    private final Histogram requestNanos = new Histogram();
+    private final Histogram publishToWriteNanos = new Histogram();
+    private ObjectName name = null;
+
+    public ServerMetrics(IntSupplier peers, Supplier<Collection<Topic>> topics) {
+        this.peers = peers;
+        this.topics = topics;
+        for (var i = 0; i < requests.length; i++)
+            requests[i] = new LongAdder();
+    }
+
+    public void recordAccept() {
+        accepted.increment();
+    }
+
+    public void recordDisconnect() {
+        disconnected.increment();
+    }
+
+    public void recordRead(long bytes) {
+        if (bytes > 0) bytesIn.add(bytes);
+    }
+
+    public void recordWrite(long bytes) {
+        if (bytes > 0) bytesOut.add(bytes);
+    }
+
+    public void recordDelivery() {
+        deliveries.increment();
+    }
+
+    public void recordPeerForward() {
+        peerForwards.increment();
+    }
+
+    public void recordPeerDrop() {
+        peerDrops.increment();
+    }
+
+    public void recordPeerReceived() {
+        peerReceived.increment();
+    }
+
+    // A negative result size means the frame was left as it is
+    public void recordCompression(int size, int result, long nanos) {
+        compressionNanos.add(nanos);
+        if (result < 0) {
+            compressionSkipped.increment();
+            return;
+        }
+        compressed.increment();
+        compressionBytesIn.add(size);
+        compressionBytesOut.add(result);
+    }
+
+    public void recordRequest(RequestType type, long nanos) {
+        requests[type.ordinal()].increment();
+        requestNanos.record(nanos);
+    }
+
+    // From the creation of the publication until a subscriber socket accepted its last byte
+    public void recordWritten(long publishedAt) {
+        publishToWriteNanos.record(System.nanoTime() - publishedAt);
+    }
+
+    public synchronized void register(IntSupplier connections) {
+        this.connections = connections;
+        if (!Config.METRICS_JMX || name != null) return;
+        try {
+            var candidate = new ObjectName("messaging:type=Server,instance=" + instances.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, candidate);
+            name = candidate;
+        } catch (JMException ignored) {}
+    }
+
+    public synchronized void unregister() {
+        if (name == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException ignored) {}
+        name = null;
+    }
+
+    @Override
+    public int getConnections() {
+        return connections.getAsInt();
+    }
+
+    @Override
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    @Override
+    public long getDisconnected() {
+        return disconnected.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getDeliveries() {
+        return deliveries.sum();
+    }
+
+    @Override
+    public int getPeers() {
+        return peers.getAsInt();
+    }
+
+    @Override
+    public long getPeerForwards() {
+        return peerForwards.sum();
+    }
+
+    @Override
+    public long getPeerDrops() {
+        return peerDrops.sum();
+    }
+
+    @Override
+    public long getPeerReceived() {
+        return peerReceived.sum();
+    }
+
+    @Override
+    public Map<String, Long> getCompression() {
+        var values = new LinkedHashMap<String, Long>();
+        long in = compressionBytesIn.sum(), out = compressionBytesOut.sum();
+        values.put("frames", compressed.sum());
+        values.put("skipped", compressionSkipped.sum());
+        values.put("bytesIn", in);
+        values.put("bytesOut", out);
+        values.put("ratioPercent", in == 0 ? 0 : out * 100 / in);
+        values.put("nanos", compressionNanos.sum());
+        return values;
+    }
+
+    // Gauges of the history held in memory over all topics
+    @Override
+    public Map<String, Long> getRetention() {
+        long messages = 0, bytes = 0, evicted = 0;
+        for (var topic : topics.get()) {
+            messages += topic.retainedMessages();
+            bytes += topic.retainedBytes();
+            evicted += topic.evictedMessages();
+        }
+        var values = new LinkedHashMap<String, Long>();
+        values.put("messages", messages);
+        values.put("bytes", bytes);
+        values.put("evicted", evicted);
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getRetainedBytes() {
+        var values = new LinkedHashMap<String, Long>();
+        for (var topic : topics.get())
+            values.put(topic.getTitle(), topic.retainedBytes());
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getRequests() {
+        var values = new LinkedHashMap<String, Long>();
+        for (var type : requestTypes)
+            values.put(type.name(), requests[type.ordinal()].sum());
+        return values;
+    }
+
+    private static Map<String, Long> summary(Histogram histogram) {
+        var snapshot = histogram.snapshot();
+        var values = new LinkedHashMap<String, Long>();
+        values.put("count", snapshot.count());
+        values.put("mean", snapshot.mean());
+        values.put("p50", snapshot.percentile(50));
+        values.put("p90", snapshot.percentile(90));
+        values.put("p99", snapshot.percentile(99));
+        values.put("p99.9", snapshot.percentile(99.9));
+        values.put("max", snapshot.max());
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getRequestNanos() {
+        return summary(requestNanos);
+    }
+
+    @Override
+    public Map<String, Long> getPublishToWriteNanos() {
+        return summary(publishToWriteNanos);
+    }
+
+    @Override
+    public Map<String, Long> getStats() {
+        var values = new LinkedHashMap<String, Long>();
+        values.put("uptimeMillis", System.currentTimeMillis() - startedAt);
+        values.put("connections", (long) getConnections());
+        values.put("accepted", getAccepted());
+        values.put("disconnected", getDisconnected());
+        values.put("bytesIn", getBytesIn());
+        values.put("bytesOut", getBytesOut());
+        values.put("deliveries", getDeliveries());
+        values.put("cluster.peers", (long) getPeers());
+        values.put("cluster.forwarded", getPeerForwards());
+        values.put("cluster.dropped", getPeerDrops());
+        values.put("cluster.received", getPeerReceived());
+        getCompression().forEach((name, value) -> values.put("compression." + name, value));
+        getRetention().forEach((name, value) -> values.put("retention." + name, value));
+        getRetainedBytes().entrySet().stream()
+          .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()))
+          .limit(Config.RETENTION_GAUGE_TOPICS)
+          .forEach(entry -> values.put("retention.bytes." + entry.getKey(), entry.getValue()));
+        var policy = Config.SLOW_CONSUMER_POLICY;
+        values.put("shed", policy.shed());
+        values.put("slowConsumerDisconnects", policy.disconnects());
+        getRequests().forEach((type, count) -> values.put("requests." + type, count));
+        getRequestNanos().forEach((name, value) -> values.put("requestNanos." + name, value));
+        getPublishToWriteNanos().forEach((name, value) -> values.put("publishToWriteNanos." + name, value));
+        return values;
+    }
+
+    public Stats snapshot() {
+        return new Stats(getStats());
+    }
+
+}
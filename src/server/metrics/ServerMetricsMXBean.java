@@ -0,0 +1,43 @@
+package server.metrics;
+
+import java.util.Map;
+
+
+public interface ServerMetricsMXBean {
+
+    int getConnections();
+
+    long getAccepted();
+
+    long getDisconnected();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getDeliveries();
+
+    int getPeers();
+
+    long getPeerForwards();
+
+    long getPeerDrops();
+
+    long getPeerReceived();
+
+    Map<String, Long> getCompression();
+
+    Map<String, Long> getRetention();
+
+    // Retained bytes of every topic by title
+    Map<String, Long> getRetainedBytes();
+
+    Map<String, Long> getRequests();
+
+    Map<String, Long> getRequestNanos();
+
+    Map<String, Long> getPublishToWriteNanos();
+
+    Map<String, Long> getStats();
+
+}
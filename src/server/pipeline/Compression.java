@@ -0,0 +1,39 @@
+package server.pipeline;
+
+import java.io.IOException;
+
+import shared.codec.BinaryCodec;
+import shared.codec.FrameCodec;
+import shared.models.communication.SharedFrame;
+
+import server.Config;
+import server.metrics.ServerMetrics;
+
+
+public final class Compression {
+
+    public static final String DEFLATE = "deflate";
+    public static final String NONE = "none";
+
+    private Compression() {}
+
+    // Only frames of the binary codec carry deflated values
+    public static boolean isAvailable(FrameCodec codec) {
+        return Config.COMPRESSION_THRESHOLD_BYTES >= 0 && codec == BinaryCodec.INSTANCE;
+    }
+
+    // Null when the frame stays below the threshold or does not shrink, its sizes and time are recorded either way
+    public static SharedFrame deflate(SharedFrame frame, ServerMetrics metrics) {
+        var start = System.nanoTime();
+        try {
+            var deflated = BinaryCodec.INSTANCE.deflate(
+              frame.view(), Config.COMPRESSION_THRESHOLD_BYTES, Config.COMPRESSION_LEVEL
+            );
+            metrics.recordCompression(frame.size(), deflated == null ? -1 : deflated.remaining(), System.nanoTime() - start);
+            return deflated == null ? null : SharedFrame.wrap(deflated);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+}
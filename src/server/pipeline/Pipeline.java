@@ -0,0 +1,97 @@
+package server.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import shared.models.communication.SharedFrame;
+import shared.models.data.Post;
+
+import server.Config;
+import server.cluster.Cluster;
+import server.handlers.ClientHandler;
+import server.routing.RoutingTable;
+
+
+public class Pipeline {
+
+    private final Stage<ClientHandler> commands;
+    private final Stage<Publication>[] fanOut;
+    // Clients that found the commands stage full, a client is scheduled at most once so this stays bounded
+    private final ConcurrentLinkedQueue<ClientHandler> waiting = new ConcurrentLinkedQueue<>();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Pipeline(RoutingTable routes, Cluster cluster) {
+        commands = new Stage<>(
+          "commands", Config.COMMAND_THREADS, Config.COMMAND_QUEUE_CAPACITY, client -> {
+              client.process();
+              admitWaiting();
+          }
+        );
+        // Every topic maps to a single lane so its publications keep their order
+        fanOut = new Stage[Config.FANOUT_LANES];
+        for (var i = 0; i < fanOut.length; i++)
+            fanOut[i] = new Stage<>(
+              "fan-out-" + i, 1, Config.FANOUT_QUEUE_CAPACITY, publication -> {
+                  try {
+                      routes.route(publication.message().topic(), client -> client.deliver(publication));
+                      // Publications of peers have no local publisher and already reached every interested node
+                      if (publication.publisher() != null)
+                          cluster.forward(publication);
+                  } finally {
+                      publication.release();
+                  }
+              }
+            );
+    }
+
+    public void start() {
+        commands.start();
+        for (var lane : fanOut)
+            lane.start();
+    }
+
+    public void shutdown() {
+        commands.shutdown();
+        waiting.clear();
+        for (var lane : fanOut)
+            for (var publication : lane.shutdown())
+                publication.release();
+    }
+
+    // Called from the reactors, which must never wait for a worker
+    public void schedule(ClientHandler client) {
+        if (commands.offer(client)) return;
+        waiting.add(client);
+        // A worker may have emptied the stage before the client was parked
+        admitWaiting();
+    }
+
+    private void admitWaiting() {
+        ClientHandler client;
+        while ((client = waiting.poll()) != null)
+            if (!commands.offer(client)) {
+                waiting.add(client);
+                return;
+            }
+    }
+
+    // Takes over the caller's reference to the frame
+    public void publish(SharedFrame frame, Post message, ClientHandler publisher) throws InterruptedException {
+        var lane = Math.floorMod(message.topic().getTitle().hashCode(), fanOut.length);
+        try {
+            fanOut[lane].submit(new Publication(frame, message, publisher));
+        } catch (InterruptedException e) {
+            frame.release();
+            throw e;
+        }
+    }
+
+    public List<Stage<?>> stages() {
+        var stages = new ArrayList<Stage<?>>(fanOut.length + 1);
+        stages.add(commands);
+        stages.addAll(List.of(fanOut));
+        return stages;
+    }
+
+}
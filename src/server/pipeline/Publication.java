@@ -0,0 +1,89 @@
+package server.pipeline;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import shared.codec.FrameCodec;
+import shared.models.communication.Response;
+import shared.models.communication.ResponseType;
+import shared.models.communication.SharedFrame;
+import shared.models.data.Delivery;
+import shared.models.data.Post;
+
+import server.handlers.ClientHandler;
+import server.metrics.ServerMetrics;
+
+
+public final class Publication {
+
+    private final SharedFrame frame;
+    private final Post message;
+    private final ClientHandler publisher;
+    private final long publishedAt = System.nanoTime();
+    private final AtomicBoolean isShed = new AtomicBoolean(false);
+    // Frames by isAliased * 2 + isDeflated, built on first use and only touched by the fan-out lane of the topic
+    private final SharedFrame[] variants = new SharedFrame[4];
+
+    public Publication(SharedFrame frame, Post message, ClientHandler publisher) {
+        this.frame = frame;
+        this.message = message;
+        this.publisher = publisher;
+    }
+
+    public SharedFrame frame() {
+        return frame;
+    }
+
+    // Encoded or compressed on the first request, so once per publication however many subscribers asked for it
+    public SharedFrame frame(boolean isAliased, boolean isDeflated, ServerMetrics metrics) {
+        var index = (isAliased ? 2 : 0) + (isDeflated ? 1 : 0);
+        if (index == 0) return frame;
+        if (variants[index] == null) {
+            var base = isAliased ? aliasedFrame() : frame;
+            if (!isDeflated)
+                variants[index] = base;
+            else {
+                var deflated = Compression.deflate(base, metrics);
+                variants[index] = deflated != null ? deflated : base.retain();
+            }
+        }
+        return variants[index];
+    }
+
+    private SharedFrame aliasedFrame() {
+        if (variants[2] == null)
+            try {
+                variants[2] = SharedFrame.encode(
+                  FrameCodec.preferred(), new Response(ResponseType.NewPublication, Delivery.aliased(message))
+                );
+            } catch (IOException e) {
+                variants[2] = frame.retain();
+            }
+        return variants[2];
+    }
+
+    public void release() {
+        frame.release();
+        for (var variant : variants)
+            if (variant != null)
+                variant.release();
+    }
+
+    public Post message() {
+        return message;
+    }
+
+    public ClientHandler publisher() {
+        return publisher;
+    }
+
+    public long publishedAt() {
+        return publishedAt;
+    }
+
+    // True only for the first subscriber shedding the publication, its publisher is told once
+    public boolean markShed() {
+        return !isShed.getAndSet(true);
+    }
+
+}
@@ -0,0 +1,106 @@
+package server.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import server.Config;
+import server.util.ConsoleLog;
+
+import static server.util.Templates.*;
+
+
+public class Stage<T> {
+
+    public final String name;
+
+    private final ArrayBlockingQueue<T> queue;
+    private final Consumer<T> handler;
+    private final Thread[] workers;
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder stalls = new LongAdder();
+    private final AtomicInteger peakDepth = new AtomicInteger(0);
+    private volatile boolean isRunning = true;
+
+    public Stage(String name, int threads, int capacity, Consumer<T> handler) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.handler = handler;
+        workers = new Thread[threads];
+        for (var i = 0; i < threads; i++)
+            workers[i] = new Thread(this::work, name + '-' + i);
+    }
+
+    public void start() {
+        for (var worker : workers)
+            worker.start();
+    }
+
+    public List<T> shutdown() {
+        isRunning = false;
+        for (var worker : workers)
+            worker.interrupt();
+        var discarded = new ArrayList<T>(queue.size());
+        queue.drainTo(discarded);
+        return discarded;
+    }
+
+    // Blocks the submitting thread while the stage is full, which is how back-pressure reaches the previous stage
+    public void submit(T item) throws InterruptedException {
+        if (!queue.offer(item)) {
+            stalls.increment();
+            queue.put(item);
+        }
+        peakDepth.accumulateAndGet(queue.size(), Math::max);
+    }
+
+    // Never blocks, a full stage is left for the caller to deal with
+    public boolean offer(T item) {
+        if (!queue.offer(item)) {
+            stalls.increment();
+            return false;
+        }
+        peakDepth.accumulateAndGet(queue.size(), Math::max);
+        return true;
+    }
+
+    private void work() {
+        while (isRunning) {
+            try {
+                var item = queue.poll(Config.SELECTOR_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (item == null) continue;
+                handler.accept(item);
+                processed.increment();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                ConsoleLog.error(error__stage, name);
+            }
+        }
+    }
+
+    public int depth() {
+        return queue.size();
+    }
+
+    public int peakDepth() {
+        return peakDepth.get();
+    }
+
+    public int capacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    public long processed() {
+        return processed.sum();
+    }
+
+    public long stalls() {
+        return stalls.sum();
+    }
+
+}
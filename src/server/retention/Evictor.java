@@ -0,0 +1,51 @@
+package server.retention;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import shared.models.data.Topic;
+
+import server.Config;
+
+
+// Drops posts past the age limit of their topic in the background, every topic lock is held for one batch
+// at a time so publishers to a topic with a large expired backlog only wait for a batch
+public class Evictor implements Closeable {
+
+    private static final int BATCH_SIZE = 1024;
+
+    private final Supplier<Collection<Topic>> topics;
+    private final ScheduledExecutorService sweeper;
+
+    public Evictor(Supplier<Collection<Topic>> topics) {
+        this.topics = topics;
+        sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            var thread = new Thread(task, "retention-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        sweeper.scheduleWithFixedDelay(
+          this::sweep, Config.RETENTION_SWEEP_MILLIS, Config.RETENTION_SWEEP_MILLIS, TimeUnit.MILLISECONDS
+        );
+    }
+
+    public void sweep() {
+        var now = System.currentTimeMillis();
+        for (var topic : topics.get())
+            while (topic.evictExpired(now, BATCH_SIZE) == BATCH_SIZE)
+                Thread.yield();
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdown();
+    }
+
+}
@@ -0,0 +1,70 @@
+package server.retention;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import shared.models.data.Retention;
+
+import server.routing.TopicTrie;
+
+
+// Retention of a topic by its title, an exact rule wins over filters and filters apply in the order given,
+// limits a rule leaves out come from the defaults
+public class RetentionPolicies {
+
+    private record Rule(String filter, Retention retention) {}
+
+    private final Retention defaults;
+    private final HashMap<String, Retention> exact = new HashMap<>();
+    private final List<Rule> filters = new ArrayList<>();
+
+    public RetentionPolicies(Retention defaults) {
+        this.defaults = defaults;
+    }
+
+    // Rules as "topic or filter:limit=value,..." separated by ';', limits are messages, bytes and millis
+    public static RetentionPolicies parse(Retention defaults, String rules) {
+        var policies = new RetentionPolicies(defaults);
+        for (var rule : rules.split(";")) {
+            if (rule.isBlank()) continue;
+            var separator = rule.lastIndexOf(':');
+            if (separator <= 0)
+                throw new IllegalArgumentException("Retention rule without a topic: " + rule);
+            var topic = rule.substring(0, separator).trim();
+            long messages = defaults.maxMessages(), bytes = defaults.maxBytes(), millis = defaults.maxAgeMillis();
+            for (var limit : rule.substring(separator + 1).split(",")) {
+                var parts = limit.split("=");
+                if (parts.length != 2)
+                    throw new IllegalArgumentException("Malformed retention limit: " + limit);
+                var value = Long.parseLong(parts[1].trim());
+                switch (parts[0].trim()) {
+                    case "messages" -> messages = value;
+                    case "bytes" -> bytes = value;
+                    case "millis" -> millis = value;
+                    default -> throw new IllegalArgumentException("Unknown retention limit: " + parts[0]);
+                }
+            }
+            policies.add(topic, new Retention(messages, bytes, millis));
+        }
+        return policies;
+    }
+
+    public void add(String topic, Retention retention) {
+        if (!TopicTrie.isFilter(topic))
+            exact.put(topic, retention);
+        else if (TopicTrie.isValidFilter(topic))
+            filters.add(new Rule(topic, retention));
+        else throw new IllegalArgumentException("Invalid retention filter: " + topic);
+    }
+
+    public Retention forTopic(String title) {
+        var retention = exact.get(title);
+        if (retention != null) return retention;
+        for (var rule : filters)
+            if (TopicTrie.matches(rule.filter(), title))
+                return rule.retention();
+        return defaults;
+    }
+
+}
@@ -0,0 +1,62 @@
+package server.routing;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import shared.models.data.Topic;
+
+import server.handlers.ClientHandler;
+
+
+public class RoutingTable {
+
+    private final ConcurrentHashMap<String, Set<ClientHandler>> routes = new ConcurrentHashMap<>();
+    private final TopicTrie<ClientHandler> filters = new TopicTrie<>();
+
+    public void add(Topic topic, ClientHandler client) {
+        routes.compute(topic.getTitle(), (title, clients) -> {
+            if (clients == null)
+                clients = ConcurrentHashMap.newKeySet();
+            clients.add(client);
+            return clients;
+        });
+    }
+
+    public void addAll(Collection<Topic> topics, ClientHandler client) {
+        for (var topic : topics)
+            add(topic, client);
+    }
+
+    public void removeAll(Collection<Topic> topics, ClientHandler client) {
+        for (var topic : topics)
+            routes.computeIfPresent(topic.getTitle(), (title, clients) -> {
+                clients.remove(client);
+                return clients.isEmpty() ? null : clients;
+            });
+    }
+
+    public void addFilter(String filter, ClientHandler client) {
+        filters.add(filter, client);
+    }
+
+    public void removeFilters(Collection<String> filters, ClientHandler client) {
+        for (var filter : filters)
+            this.filters.remove(filter, client);
+    }
+
+    // Clients subscribed to the topic itself or to a filter matching it, each of them once.
+    // Only filter matches are deduplicated, the exact subscribers are never copied
+    public void route(Topic topic, Consumer<ClientHandler> action) {
+        var clients = routes.getOrDefault(topic.getTitle(), Collections.emptySet());
+        clients.forEach(action);
+        filters.match(topic.getTitle(), clients, action);
+    }
+
+    public int size() {
+        return routes.size();
+    }
+
+}
@@ -0,0 +1,33 @@
+package server.routing;
+
+import java.util.Arrays;
+
+import shared.models.data.Topic;
+
+
+// Every topic gets the next alias when it is created, so resolving one is an array access
+public class TopicAliases {
+
+    private volatile Topic[] topics = new Topic[1024];
+    private int count = 0;
+
+    public synchronized int assign(Topic topic) {
+        if (count == topics.length)
+            topics = Arrays.copyOf(topics, count * 2);
+        topics[count] = topic;
+        topic.assignAlias(count);
+        return count++;
+    }
+
+    // Null for aliases never assigned
+    public Topic get(int alias) {
+        var topics = this.topics;
+        var topic = alias >= 0 && alias < topics.length ? topics[alias] : null;
+        if (topic != null || alias < 0) return topic;
+        // The slot may have been written after the array was read without a lock
+        synchronized (this) {
+            return alias < count ? this.topics[alias] : null;
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+package server.routing;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+
+// Wildcard filters by title level, "+" matches exactly one level and a trailing "#" any number of them.
+// Matching a title walks at most its levels through the exact and "+" branches, whatever the number of filters.
+// Holding plain titles instead, find walks a filter down to the titles it matches
+public class TopicTrie<T> {
+
+    public static final char SEPARATOR = '/';
+    public static final String SINGLE_LEVEL = "+";
+    public static final String MULTI_LEVEL = "#";
+
+    private static final class Node<T> {
+
+        final Node<T> parent;
+        final String level;
+        final ConcurrentHashMap<String, Node<T>> children = new ConcurrentHashMap<>();
+        final Set<T> clients = ConcurrentHashMap.newKeySet();
+
+        Node(Node<T> parent, String level) {
+            this.parent = parent;
+            this.level = level;
+        }
+
+    }
+
+    private final Node<T> root = new Node<>(null, null);
+    private volatile int filters = 0;
+
+    public static boolean isFilter(String title) {
+        return title.indexOf('+') >= 0 || title.indexOf('#') >= 0;
+    }
+
+    // Wildcards must fill a whole level, "#" only the last one
+    public static boolean isValidFilter(String filter) {
+        var levels = filter.split(String.valueOf(SEPARATOR), -1);
+        for (var i = 0; i < levels.length; i++) {
+            var level = levels[i];
+            if (level.equals(MULTI_LEVEL) && i == levels.length - 1 || level.equals(SINGLE_LEVEL)) continue;
+            if (level.indexOf('+') >= 0 || level.indexOf('#') >= 0) return false;
+        }
+        return true;
+    }
+
+    public static boolean matches(String filter, String title) {
+        var levels = filter.split(String.valueOf(SEPARATOR), -1);
+        var start = 0;
+        for (var i = 0; i < levels.length; i++) {
+            if (levels[i].equals(MULTI_LEVEL)) return true;
+            if (start > title.length()) return false;
+            var end = title.indexOf(SEPARATOR, start);
+            if (end < 0) end = title.length();
+            if (!levels[i].equals(SINGLE_LEVEL) && !levels[i].equals(title.substring(start, end))) return false;
+            start = end + 1;
+        }
+        return start > title.length();
+    }
+
+    public boolean isEmpty() {
+        return filters == 0;
+    }
+
+    public synchronized void add(String filter, T client) {
+        var node = root;
+        for (var level : filter.split(String.valueOf(SEPARATOR), -1)) {
+            var parent = node;
+            node = node.children.computeIfAbsent(level, key -> new Node<>(parent, key));
+        }
+        if (node.clients.add(client))
+            filters++;
+    }
+
+    public synchronized void remove(String filter, T client) {
+        var node = root;
+        for (var level : filter.split(String.valueOf(SEPARATOR), -1)) {
+            node = node.children.get(level);
+            if (node == null) return;
+        }
+        if (!node.clients.remove(client)) return;
+        filters--;
+        // Branches left without filters are cut off, matching may still walk a detached one harmlessly
+        while (node.parent != null && node.clients.isEmpty() && node.children.isEmpty()) {
+            node.parent.children.remove(node.level, node);
+            node = node.parent;
+        }
+    }
+
+    public void match(String title, Consumer<T> action) {
+        if (filters == 0) return;
+        match(root, title, 0, action);
+    }
+
+    // Clients of matching filters that are not in the excluded set, each of them once
+    public void match(String title, Set<T> excluded, Consumer<T> action) {
+        if (filters == 0) return;
+        var matched = new HashSet<T>();
+        match(root, title, 0, client -> {
+            if (!excluded.contains(client) && matched.add(client))
+                action.accept(client);
+        });
+    }
+
+    // Clients added under every title the filter matches
+    public void find(String filter, Consumer<T> action) {
+        if (filters == 0) return;
+        find(root, filter.split(String.valueOf(SEPARATOR), -1), 0, action);
+    }
+
+    private static <T> void find(Node<T> node, String[] levels, int index, Consumer<T> action) {
+        if (index == levels.length) {
+            node.clients.forEach(action);
+            return;
+        }
+        switch (levels[index]) {
+            // Like matches, "a/#" takes in "a" itself
+            case MULTI_LEVEL -> findAll(node, action);
+            case SINGLE_LEVEL -> {
+                for (var child : node.children.values())
+                    find(child, levels, index + 1, action);
+            }
+            default -> {
+                var child = node.children.get(levels[index]);
+                if (child != null)
+                    find(child, levels, index + 1, action);
+            }
+        }
+    }
+
+    private static <T> void findAll(Node<T> node, Consumer<T> action) {
+        node.clients.forEach(action);
+        for (var child : node.children.values())
+            findAll(child, action);
+    }
+
+    private static <T> void match(Node<T> node, String title, int start, Consumer<T> action) {
+        var rest = node.children.get(MULTI_LEVEL);
+        if (rest != null)
+            rest.clients.forEach(action);
+        if (start > title.length()) {
+            node.clients.forEach(action);
+            return;
+        }
+        var end = title.indexOf(SEPARATOR, start);
+        if (end < 0) end = title.length();
+        var exact = node.children.get(title.substring(start, end));
+        if (exact != null)
+            match(exact, title, end + 1, action);
+        var any = node.children.get(SINGLE_LEVEL);
+        if (any != null)
+            match(any, title, end + 1, action);
+    }
+
+}
@@ -0,0 +1,57 @@
+package server.sessions;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import shared.models.data.Session;
+import shared.models.data.User;
+
+import server.Config;
+
+
+// Users by session token, a token expires SESSION_TTL_MILLIS after it was issued or last resumed.
+// Expired tokens are dropped when looked up and swept every SWEEP_INTERVAL issued tokens
+public class SessionCache {
+
+    public record Entry(User user, Session session) {}
+
+    private static final int TOKEN_BYTES = 16;
+    private static final int SWEEP_INTERVAL = 1024;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    private final ConcurrentHashMap<String, Entry> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger issued = new AtomicInteger(0);
+
+    public Session issue(User user) {
+        var bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        var now = System.currentTimeMillis();
+        var session = new Session(user.username(), encoder.encodeToString(bytes), now + Config.SESSION_TTL_MILLIS);
+        sessions.put(session.token(), new Entry(user, session));
+        if (issued.incrementAndGet() % SWEEP_INTERVAL == 0)
+            sessions.values().removeIf(entry -> entry.session().expiresAt() <= now);
+        return session;
+    }
+
+    // Null for unknown or expired tokens, otherwise the user with the extended session
+    public Entry resume(String token) {
+        var now = System.currentTimeMillis();
+        return sessions.computeIfPresent(
+          token, (key, entry) -> entry.session().expiresAt() <= now
+            ? null
+            : new Entry(entry.user(), new Session(entry.user().username(), key, now + Config.SESSION_TTL_MILLIS))
+        );
+    }
+
+    public void revoke(String token) {
+        sessions.remove(token);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+}
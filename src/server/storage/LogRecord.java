@@ -0,0 +1,3 @@
+package server.storage;
+
+public record LogRecord(long offset, long createdAt, String author, String body) {}
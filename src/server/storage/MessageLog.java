@@ -0,0 +1,123 @@
+package server.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import server.Config;
+import server.util.ConsoleLog;
+
+import static server.util.Templates.*;
+
+
+// One directory per topic, appends reach the disk when the flusher forces the dirty logs
+public class MessageLog implements Closeable {
+
+    private static final String TOPIC_PREFIX = "topic-";
+
+    private final Path directory;
+    private final ConcurrentHashMap<String, TopicLog> logs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    private MessageLog(Path directory) {
+        this.directory = directory;
+        if (Config.LOG_FLUSH_INTERVAL_MILLIS > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+                var thread = new Thread(task, "log-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(
+              this::flush, Config.LOG_FLUSH_INTERVAL_MILLIS, Config.LOG_FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS
+            );
+        } else flusher = null;
+    }
+
+    public static MessageLog open(Path directory, BiConsumer<String, LogRecord> visitor) throws IOException {
+        Files.createDirectories(directory);
+        var messageLog = new MessageLog(directory);
+        try (var entries = Files.list(directory)) {
+            for (var path : (Iterable<Path>) entries::iterator) {
+                var name = path.getFileName().toString();
+                if (!Files.isDirectory(path) || !name.startsWith(TOPIC_PREFIX)) continue;
+                var title = URLDecoder.decode(name.substring(TOPIC_PREFIX.length()), StandardCharsets.UTF_8);
+                messageLog.logs.put(title, TopicLog.open(path, record -> visitor.accept(title, record)));
+            }
+        } catch (IOException | RuntimeException e) {
+            messageLog.close();
+            throw e;
+        }
+        return messageLog;
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    public TopicLog log(String title) throws IOException {
+        try {
+            return logs.computeIfAbsent(title, t -> {
+                try {
+                    return TopicLog.open(
+                      directory.resolve(TOPIC_PREFIX + URLEncoder.encode(t, StandardCharsets.UTF_8)), record -> {}
+                    );
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public long append(String title, long createdAt, String author, String body) throws IOException {
+        var log = log(title);
+        var offset = log.append(createdAt, author, body);
+        if (flusher == null)
+            log.flush();
+        return offset;
+    }
+
+    // Records of the topic from the offset on, none for a topic that was never logged
+    public int read(String title, long fromOffset, int maxRecords, Consumer<LogRecord> visitor) throws IOException {
+        var log = logs.get(title);
+        return log == null ? 0 : log.read(fromOffset, maxRecords, visitor);
+    }
+
+    public void flush() {
+        logs.forEach((title, log) -> {
+            try {
+                log.flush();
+            } catch (IOException e) {
+                ConsoleLog.error(error__storage, title);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null)
+            flusher.shutdown();
+        flush();
+        logs.forEach((title, log) -> {
+            try {
+                log.close();
+            } catch (IOException e) {
+                ConsoleLog.error(error__storage, title);
+            }
+        });
+        logs.clear();
+    }
+
+}
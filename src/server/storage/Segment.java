@@ -0,0 +1,231 @@
+package server.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import server.Config;
+
+
+// Record layout: [int length][int crc32][long offset][long createdAt][short authorLength][author][body]
+class Segment implements Closeable {
+
+    static final String LOG_SUFFIX = ".log";
+    static final String INDEX_SUFFIX = ".index";
+
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+    private static final int FIXED_SIZE = Long.BYTES * 2 + Short.BYTES;
+    private static final int INDEX_ENTRY_SIZE = Integer.BYTES * 2;
+    // The author length is read back as an unsigned short
+    private static final int MAX_AUTHOR_LENGTH = 0xFFFF;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    final long baseOffset;
+
+    private final Path logPath;
+    private final Path indexPath;
+    private FileChannel log;
+    private FileChannel index;
+    // Appends publish the size before the next offset, readers take them in the opposite order
+    private volatile long size = 0;
+    private volatile long nextOffset;
+    private long lastIndexedPosition = 0;
+
+    private Segment(Path directory, long baseOffset) {
+        this.baseOffset = baseOffset;
+        this.nextOffset = baseOffset;
+        var name = String.format("%020d", baseOffset);
+        logPath = directory.resolve(name + LOG_SUFFIX);
+        indexPath = directory.resolve(name + INDEX_SUFFIX);
+    }
+
+    private void openChannels() throws IOException {
+        log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    static Segment create(Path directory, long baseOffset) throws IOException {
+        var segment = new Segment(directory, baseOffset);
+        segment.openChannels();
+        return segment;
+    }
+
+    // Scans every record, truncates a torn tail and rewrites the sparse index of the segment
+    static Segment recover(Path directory, long baseOffset, Consumer<LogRecord> visitor) throws IOException {
+        var segment = new Segment(directory, baseOffset);
+        segment.openChannels();
+        segment.index.truncate(0);
+        var data = segment.log.size() == 0 ? null : segment.log.map(FileChannel.MapMode.READ_ONLY, 0, segment.log.size());
+        var position = 0;
+        while (data != null) {
+            var record = readRecord(data, position);
+            if (record == null) break;
+            segment.indexIfDue(record.offset(), position);
+            visitor.accept(record);
+            position = data.position();
+            segment.nextOffset = record.offset() + 1;
+        }
+        segment.size = position;
+        segment.log.truncate(position);
+        return segment;
+    }
+
+    long size() {
+        return size;
+    }
+
+    long nextOffset() {
+        return nextOffset;
+    }
+
+    static ByteBuffer encode(long offset, long createdAt, String author, String body) throws IOException {
+        var authorBytes = author.getBytes(StandardCharsets.UTF_8);
+        if (authorBytes.length > MAX_AUTHOR_LENGTH)
+            throw new IOException("Author of " + authorBytes.length + " bytes does not fit a record");
+        var bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+        var length = FIXED_SIZE + authorBytes.length + bodyBytes.length;
+        var record = ByteBuffer.allocate(HEADER_SIZE + length);
+        record.position(HEADER_SIZE);
+        record
+          .putLong(offset)
+          .putLong(createdAt)
+          .putShort((short) authorBytes.length)
+          .put(authorBytes)
+          .put(bodyBytes);
+        var crc = new CRC32();
+        crc.update(record.array(), HEADER_SIZE, length);
+        return record.putInt(0, length).putInt(Integer.BYTES, (int) crc.getValue()).flip();
+    }
+
+    private static LogRecord readRecord(ByteBuffer data, int position) {
+        if (data.limit() - position < HEADER_SIZE) return null;
+        var length = data.getInt(position);
+        if (length < FIXED_SIZE || data.limit() - position - HEADER_SIZE < length) return null;
+        var payload = data.slice(position + HEADER_SIZE, length);
+        var crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != data.getInt(position + Integer.BYTES)) return null;
+        var offset = payload.getLong();
+        var createdAt = payload.getLong();
+        var authorLength = payload.getShort() & 0xFFFF;
+        if (authorLength > payload.remaining()) return null;
+        var author = new byte[authorLength];
+        payload.get(author);
+        var body = new byte[payload.remaining()];
+        payload.get(body);
+        data.position(position + HEADER_SIZE + length);
+        return new LogRecord(
+          offset, createdAt, new String(author, StandardCharsets.UTF_8), new String(body, StandardCharsets.UTF_8)
+        );
+    }
+
+    private void indexIfDue(long offset, long position) throws IOException {
+        if (position - lastIndexedPosition < Config.LOG_INDEX_INTERVAL_BYTES) return;
+        var entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE)
+          .putInt((int) (offset - baseOffset))
+          .putInt((int) position)
+          .flip();
+        index.write(entry, index.size());
+        lastIndexedPosition = position;
+    }
+
+    void append(ByteBuffer record, long offset) throws IOException {
+        indexIfDue(offset, size);
+        var position = size;
+        while (record.hasRemaining())
+            position += log.write(record, position);
+        size = position;
+        nextOffset = offset + 1;
+    }
+
+    void flush() throws IOException {
+        log.force(false);
+        index.force(false);
+    }
+
+    // Position of the closest indexed record at or before the offset
+    private long floorPosition(long offset) throws IOException {
+        var entries = index.size() / INDEX_ENTRY_SIZE;
+        var entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        long low = 0, high = entries - 1, position = 0;
+        var relative = offset - baseOffset;
+        while (low <= high) {
+            var middle = (low + high) >>> 1;
+            entry.clear();
+            while (entry.hasRemaining())
+                if (index.read(entry, middle * INDEX_ENTRY_SIZE + entry.position()) < 0)
+                    throw new IOException("Truncated index " + indexPath);
+            if (entry.getInt(0) <= relative) {
+                position = entry.getInt(Integer.BYTES);
+                low = middle + 1;
+            } else high = middle - 1;
+        }
+        return position;
+    }
+
+    // Positional reads of what was appended before the call, appends may go on meanwhile
+    int read(long fromOffset, int maxRecords, Consumer<LogRecord> visitor) throws IOException {
+        var next = nextOffset;
+        var limit = size;
+        if (fromOffset >= next || limit == 0) return 0;
+        var position = floorPosition(fromOffset);
+        var data = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        var count = 0;
+        while (count < maxRecords && position < limit) {
+            data.clear().limit((int) Math.min(data.capacity(), limit - position));
+            while (data.hasRemaining())
+                if (log.read(data, position + data.position()) < 0) break;
+            data.flip();
+            var consumed = 0;
+            LogRecord record;
+            while (count < maxRecords && (record = readRecord(data, consumed)) != null) {
+                consumed = data.position();
+                if (record.offset() < fromOffset) continue;
+                visitor.accept(record);
+                count++;
+            }
+            if (consumed == 0) {
+                // A record larger than the buffer gets one of its own, anything else ends the segment
+                var length = data.remaining() >= HEADER_SIZE ? data.getInt(0) : -1;
+                if (data.limit() < data.capacity() || length < FIXED_SIZE || HEADER_SIZE + length > limit - position)
+                    break;
+                data = ByteBuffer.allocate(HEADER_SIZE + length);
+                continue;
+            }
+            position += consumed;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            log.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    static boolean isLogFile(Path path) {
+        return path.getFileName().toString().endsWith(LOG_SUFFIX);
+    }
+
+    static long baseOffsetOf(Path path) {
+        var name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length()));
+    }
+
+    static void delete(Path directory, long baseOffset) throws IOException {
+        var name = String.format("%020d", baseOffset);
+        Files.deleteIfExists(directory.resolve(name + LOG_SUFFIX));
+        Files.deleteIfExists(directory.resolve(name + INDEX_SUFFIX));
+    }
+
+}
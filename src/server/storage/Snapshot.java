@@ -0,0 +1,340 @@
+package server.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+import shared.models.data.Credentials;
+import shared.models.data.Topic;
+import shared.models.data.User;
+
+import server.Config;
+import server.util.ConsoleLog;
+
+import static server.util.Templates.*;
+
+
+// Layout: [int magic][int version][long takenAt][varint topics][title]... then a [byte 1][user] record per user and
+// [byte 0]. The trailer holds the [int position] of every chunk of CHUNK_USERS users, their [int count] and the
+// [int crc32] of everything before it. A user is its username, password hash, subscriptions and positions as topic
+// references, and filters with the epoch millis they were made at. A topic reference is the index in the title
+// table plus one, or 0 followed by the title of a topic created while the snapshot was taken.
+// Strings are varint length plus one prefixed UTF-8, 0 stands for null
+public class Snapshot implements Closeable {
+
+    public record Restored(int users, int topics) {}
+
+    private static final int MAGIC = 0x4d534e50;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 20;
+    // Chunks of users are restored in parallel
+    private static final int CHUNK_USERS = 16384;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path file;
+    private final Supplier<Collection<Topic>> topics;
+    private final Supplier<Collection<User>> users;
+    private volatile ScheduledExecutorService writer = null;
+
+    public Snapshot(Path file, Supplier<Collection<Topic>> topics, Supplier<Collection<User>> users) {
+        this.file = file;
+        this.topics = topics;
+        this.users = users;
+    }
+
+    // Periodic writes run until close, the final write when the server stops is its own
+    public void start() {
+        if (Config.SNAPSHOT_INTERVAL_MILLIS <= 0 || writer != null) return;
+        var writer = Executors.newSingleThreadScheduledExecutor(task -> {
+            var thread = new Thread(task, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(
+          this::tryWrite, Config.SNAPSHOT_INTERVAL_MILLIS, Config.SNAPSHOT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS
+        );
+        this.writer = writer;
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    private void tryWrite() {
+        try {
+            write();
+        } catch (IOException e) {
+            ConsoleLog.error(error__snapshot, file);
+        }
+    }
+
+    // Users are copied one at a time while the server keeps running, each one as it was at that moment.
+    // The file is replaced only once the new snapshot is complete on disk
+    public synchronized void write() throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        var temporary = file.resolveSibling(file.getFileName() + TEMPORARY_SUFFIX);
+        try (var channel = FileChannel.open(
+          temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            var out = new Output(channel);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            var titles = new HashMap<String, Integer>();
+            for (var topic : topics.get())
+                titles.putIfAbsent(topic.getTitle(), titles.size());
+            var table = new String[titles.size()];
+            titles.forEach((title, index) -> table[index] = title);
+            out.writeVarInt(table.length);
+            for (var title : table)
+                out.writeString(title);
+            var count = 0L;
+            var chunks = new ArrayList<Integer>();
+            for (var user : users.get()) {
+                if (out.position() > Integer.MAX_VALUE)
+                    throw new IOException("Snapshot " + file + " would be too large to map");
+                if (chunks.size() * (long) CHUNK_USERS == count++)
+                    chunks.add((int) out.position());
+                out.writeByte(1);
+                out.writeString(user.username());
+                out.writeString(user.password());
+                var subscriptions = user.getSubscriptions();
+                out.writeVarInt(subscriptions.size());
+                for (var topic : subscriptions)
+                    out.writeTopic(titles, topic.getTitle());
+                var positions = user.getPositions();
+                out.writeVarInt(positions.size());
+                for (var position : positions.entrySet()) {
+                    out.writeTopic(titles, position.getKey());
+                    out.writeLong(position.getValue());
+                }
+                var filters = user.getFilters();
+                out.writeVarInt(filters.size());
+                for (var filter : filters.entrySet()) {
+                    out.writeString(filter.getKey());
+                    out.writeLong(filter.getValue());
+                }
+            }
+            out.writeByte(0);
+            for (var chunk : chunks)
+                out.writeInt(chunk);
+            out.writeInt(chunks.size());
+            out.finish();
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Reads a mapped snapshot, null when there is none. Topics come from the given function so they are
+    // created like any other, every user is handed over with its subscriptions, positions and filters restored
+    public static Restored load(
+      Path file, Function<String, Topic> topics, Consumer<User> users
+    ) throws IOException {
+        if (!Files.isRegularFile(file)) return null;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Snapshot " + file + " is too large to map");
+            if (size < Integer.BYTES * 4 + Long.BYTES)
+                throw new IOException("Snapshot " + file + " is truncated");
+            var in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            var crc = new CRC32();
+            crc.update(in.slice(0, (int) size - Integer.BYTES));
+            if ((int) crc.getValue() != in.getInt((int) size - Integer.BYTES))
+                throw new IOException("Snapshot " + file + " is corrupt");
+            var chunkCount = in.getInt((int) size - Integer.BYTES * 2);
+            var trailer = (int) size - Integer.BYTES * 2 - chunkCount * Integer.BYTES;
+            if (chunkCount < 0 || trailer < 0)
+                throw new IOException("Snapshot " + file + " is malformed");
+            var chunks = new int[chunkCount];
+            for (var i = 0; i < chunkCount; i++)
+                chunks[i] = in.getInt(trailer + i * Integer.BYTES);
+            in.limit(trailer);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION)
+                throw new IOException("Snapshot " + file + " has an unknown format");
+            in.getLong();
+            var scratch = new byte[256];
+            var table = new Topic[readVarInt(in)];
+            for (var i = 0; i < table.length; i++)
+                table[i] = topics.apply(readString(in, scratch));
+            var count = IntStream.range(0, chunkCount).parallel().map(chunk -> {
+                try {
+                    return loadChunk(in.duplicate().position(chunks[chunk]), table, topics, users);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).sum();
+            return new Restored(count, table.length);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            throw new IOException("Snapshot " + file + " is malformed", e);
+        }
+    }
+
+    private static int loadChunk(
+      ByteBuffer in, Topic[] table, Function<String, Topic> topics, Consumer<User> users
+    ) throws IOException {
+        var scratch = new byte[256];
+        var count = 0;
+        while (count < CHUNK_USERS && in.get() == 1) {
+            var user = new User(Credentials.fromHash(readString(in, scratch), readString(in, scratch)));
+            for (var i = readVarInt(in); i > 0; i--) {
+                var topic = readTopic(in, table, topics, scratch);
+                topic.addSubscriber(user);
+                user.addSubscription(topic);
+            }
+            for (var i = readVarInt(in); i > 0; i--)
+                user.position(readTopic(in, table, topics, scratch)).set(in.getLong());
+            for (var i = readVarInt(in); i > 0; i--)
+                user.addFilter(readString(in, scratch), in.getLong());
+            users.accept(user);
+            count++;
+        }
+        return count;
+    }
+
+    private static Topic readTopic(
+      ByteBuffer in, Topic[] table, Function<String, Topic> topics, byte[] scratch
+    ) throws IOException {
+        var reference = readVarInt(in);
+        return reference == 0 ? topics.apply(readString(in, scratch)) : table[reference - 1];
+    }
+
+    private static int readVarInt(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (var shift = 0; shift < 35; shift += 7) {
+            var b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static String readString(ByteBuffer in, byte[] scratch) throws IOException {
+        var length = readVarInt(in) - 1;
+        if (length < 0) return null;
+        var bytes = length <= scratch.length ? scratch : new byte[length];
+        in.get(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        var writer = this.writer;
+        if (writer == null) return;
+        this.writer = null;
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Config.SNAPSHOT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Buffered writes to the channel, the checksum covers every byte handed to it
+    private static final class Output {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CRC32 crc = new CRC32();
+
+        private long flushed = 0;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        long position() {
+            return flushed + buffer.position();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) return;
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            flushed += buffer.remaining();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        void writeByte(int value) throws IOException {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        void writeInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void writeVarInt(int value) throws IOException {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        void writeString(String value) throws IOException {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            var bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length + 1);
+            var written = 0;
+            while (written < bytes.length) {
+                ensure(1);
+                var chunk = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, chunk);
+                written += chunk;
+            }
+        }
+
+        void writeTopic(HashMap<String, Integer> titles, String title) throws IOException {
+            var index = titles.get(title);
+            if (index != null)
+                writeVarInt(index + 1);
+            else {
+                writeVarInt(0);
+                writeString(title);
+            }
+        }
+
+        // Flushes the buffer followed by the checksum
+        void finish() throws IOException {
+            ensure(BUFFER_SIZE);
+            buffer.putInt((int) crc.getValue()).flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+package server.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import server.Config;
+
+
+// Append-only log of a single topic, split in segments named after the offset of their first record
+public class TopicLog implements Closeable {
+
+    private final Path directory;
+    // Readers walk the segments without the append lock, rolls are rare enough to copy them
+    private final CopyOnWriteArrayList<Segment> segments = new CopyOnWriteArrayList<>();
+    private volatile Segment active;
+    private volatile boolean isDirty = false;
+
+    private TopicLog(Path directory) {
+        this.directory = directory;
+    }
+
+    static TopicLog open(Path directory, Consumer<LogRecord> visitor) throws IOException {
+        Files.createDirectories(directory);
+        var log = new TopicLog(directory);
+        try (var files = Files.list(directory)) {
+            var offsets = files.filter(Segment::isLogFile).mapToLong(Segment::baseOffsetOf).sorted().toArray();
+            for (var baseOffset : offsets) {
+                var expected = log.active == null ? baseOffset : log.active.nextOffset();
+                if (baseOffset != expected) {
+                    // Segment after a torn tail, its records can no longer be given consecutive offsets
+                    Segment.delete(directory, baseOffset);
+                    continue;
+                }
+                log.active = Segment.recover(directory, baseOffset, visitor);
+                log.segments.add(log.active);
+            }
+        }
+        if (log.active == null) {
+            log.active = Segment.create(directory, 0);
+            log.segments.add(log.active);
+        }
+        return log;
+    }
+
+    public long nextOffset() {
+        return active.nextOffset();
+    }
+
+    public synchronized long append(long createdAt, String author, String body) throws IOException {
+        var offset = active.nextOffset();
+        var record = Segment.encode(offset, createdAt, author, body);
+        if (active.size() > 0 && active.size() + record.remaining() > Config.LOG_SEGMENT_BYTES)
+            roll(offset);
+        active.append(record, offset);
+        isDirty = true;
+        return offset;
+    }
+
+    private void roll(long baseOffset) throws IOException {
+        active.flush();
+        active = Segment.create(directory, baseOffset);
+        segments.add(active);
+    }
+
+    public int read(long fromOffset, int maxRecords, Consumer<LogRecord> visitor) throws IOException {
+        var segments = this.segments.toArray(Segment[]::new);
+        var index = segments.length - 1;
+        while (index > 0 && segments[index].baseOffset > fromOffset)
+            index--;
+        var count = 0;
+        for (; index < segments.length && count < maxRecords; index++)
+            count += segments[index].read(fromOffset, maxRecords - count, visitor);
+        return count;
+    }
+
+    void flush() throws IOException {
+        if (!isDirty) return;
+        isDirty = false;
+        active.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (var segment : segments)
+            try {
+                segment.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        if (failure != null) throw failure;
+    }
+
+}
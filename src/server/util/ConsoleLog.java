@@ -0,0 +1,153 @@
+package server.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static shared.util.Styling.*;
+
+import server.Config;
+
+import static server.util.Templates.*;
+
+
+// Server events are queued as a template and its arguments, a background thread formats and prints them
+// so no event loop or client monitor ever waits for the console
+public final class ConsoleLog {
+
+    // Debug covers the per-message events, logins, publishes, subscriptions and replays
+    public enum Level {
+        Off, Error, Info, Debug
+    }
+
+    private record Event(Level level, Templates template, Object[] args) {}
+
+    private static final int CAPACITY = Integer.highestOneBit(Math.max(2, Config.CONSOLE_QUEUE_CAPACITY - 1)) << 1;
+    private static final int MASK = CAPACITY - 1;
+
+    // Bounded multi-producer ring, a slot is free for position p while its sequence equals p
+    private static final Event[] slots = new Event[CAPACITY];
+    private static final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private static final AtomicLong tail = new AtomicLong(0);
+    private static volatile long head = 0;
+
+    private static final LongAdder dropped = new LongAdder();
+    private static volatile boolean isSleeping = false;
+    private static final Thread printer;
+
+    static {
+        for (var i = 0; i < CAPACITY; i++)
+            sequences.set(i, i);
+        printer = new Thread(ConsoleLog::run, "console-log");
+        printer.setDaemon(true);
+        printer.start();
+    }
+
+    private ConsoleLog() {}
+
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() <= Config.CONSOLE_LEVEL.ordinal() && level != Level.Off;
+    }
+
+    public static void error(Templates template, Object... args) {
+        log(Level.Error, template, args);
+    }
+
+    public static void info(Templates template, Object... args) {
+        log(Level.Info, template, args);
+    }
+
+    // Only one in CONSOLE_SAMPLE_RATE of these is kept
+    public static void debug(Templates template, Object... args) {
+        if (!isEnabled(Level.Debug)) return;
+        if (Config.CONSOLE_SAMPLE_RATE > 1 && ThreadLocalRandom.current().nextInt(Config.CONSOLE_SAMPLE_RATE) != 0)
+            return;
+        offer(new Event(Level.Debug, template, args));
+    }
+
+    // Animated status line, shown between events while nothing else is printed
+    public static void tick(String message) {
+        if (isEnabled(Level.Info))
+            offer(new Event(Level.Info, null, new Object[]{message}));
+    }
+
+    private static void log(Level level, Templates template, Object... args) {
+        if (isEnabled(level))
+            offer(new Event(level, template, args));
+    }
+
+    private static void offer(Event event) {
+        for (;;) {
+            var position = tail.get();
+            var index = (int) (position & MASK);
+            var sequence = sequences.get(index);
+            if (sequence == position) {
+                if (!tail.compareAndSet(position, position + 1)) continue;
+                slots[index] = event;
+                sequences.set(index, position + 1);
+                if (isSleeping)
+                    LockSupport.unpark(printer);
+                return;
+            }
+            if (sequence < position) {
+                dropped.increment();
+                return;
+            }
+        }
+    }
+
+    private static Event poll() {
+        var position = head;
+        var index = (int) (position & MASK);
+        if (sequences.get(index) != position + 1) return null;
+        var event = slots[index];
+        slots[index] = null;
+        sequences.set(index, position + CAPACITY);
+        head = position + 1;
+        return event;
+    }
+
+    // Waits until everything logged so far is printed, so console output of the caller follows it
+    public static void flush() {
+        if (Thread.currentThread() == printer) return;
+        var target = tail.get();
+        var deadline = System.nanoTime() + Config.CONSOLE_FLUSH_TIMEOUT_MILLIS * 1_000_000L;
+        while (head < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(printer);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    private static void run() {
+        for (;;) {
+            var event = poll();
+            if (event == null) {
+                var lost = dropped.sumThenReset();
+                if (lost > 0)
+                    printMessage(String.format(message__console_dropped.val, lost));
+                isSleeping = true;
+                if ((event = poll()) == null)
+                    LockSupport.park();
+                isSleeping = false;
+                if (event == null) continue;
+            }
+            try {
+                print(event);
+            } catch (RuntimeException ignored) {}
+        }
+    }
+
+    private static void print(Event event) {
+        if (event.template() == null)
+            tickLoader((String) event.args()[0]);
+        else if (event.level() == Level.Error)
+            printError(event.args().length == 0 ? event.template().val : String.format(event.template().val, event.args()));
+        else if (event.args().length == 0)
+            printMessage(event.template().data);
+        else
+            printMessage(String.format(event.template().val, event.args()));
+    }
+
+}
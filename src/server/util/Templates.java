@@ -34,6 +34,13 @@ public enum Templates {
 
     ),
 
+    request__mode (
+
+      "Enter " + BLUE_UNDERLINED + "selector" + RESET + " to serve connections from reactor threads",
+      "or " + BLUE_UNDERLINED + "virtual" + RESET + " to give every connection its own virtual thread"
+
+    ),
+
     error__startup (
 
       "Only 'run' or 'exit' is permitted as input"
@@ -46,6 +53,12 @@ public enum Templates {
 
     ),
 
+    error__mode (
+
+      "Only 'selector' or 'virtual' is permitted as input"
+
+    ),
+
     error__ports_amount (
 
       "Illegal value, you are only allowed to enter numbers in range 0 - 8"
@@ -76,6 +89,24 @@ public enum Templates {
 
     ),
 
+    error__stage (
+
+      "Unexpected failure in the %s stage"
+
+    ),
+
+    error__storage (
+
+      "There was a problem while accessing the message log of topic %s"
+
+    ),
+
+    error__snapshot (
+
+      "There was a problem while writing the snapshot %s"
+
+    ),
+
     message__starting (
 
       GRAY + "Server starting ..."
@@ -114,6 +145,32 @@ public enum Templates {
 
     ),
 
+    message__reactors_info (
+
+      PURPLE + "Reactor threads" + RESET + ": " + BLUE + "%d" + GRAY + '.'
+
+    ),
+
+    message__virtual_threads_info (
+
+      PURPLE + "Connections are served by " + BLUE + "virtual threads" + GRAY + '.'
+
+    ),
+
+    message__log_info (
+
+      GRAY + "Recovered " + BLUE + "%d" + GRAY + " messages in " + BLUE + "%d" + GRAY + " topics from " +
+        BLUE + "%s" + GRAY + '.'
+
+    ),
+
+    message__shed_info (
+
+      GRAY + "Slow consumer policy " + BLUE + "%s" + GRAY + ": " + BLUE + "%d" + GRAY + " publications shed, " +
+        BLUE + "%d" + GRAY + " clients disconnected."
+
+    ),
+
     message__waiting (
 
       BLUE_BOLD + "  %s" + GRAY + " Waiting for %s " + BLACK_BRIGHT + " %s  "
@@ -142,6 +199,93 @@ public enum Templates {
 
     ),
 
+    message__slow_consumer (
+
+      GRAY + '[' + YELLOW + "%d" + GRAY + ']' + RESET + ": " +
+        PURPLE + "Client " + BLUE + "%s" + BLACK_BRIGHT + ':' + BLUE + "%d" +
+        PURPLE + " was disconnected for not keeping up with its publications" + GRAY + '.'
+
+    ),
+
+    message__signed_in (
+
+      GRAY + '[' + YELLOW + "%d" + GRAY + ']' + RESET + ": " +
+        PURPLE + "Client " + BLUE + "%s" + BLACK_BRIGHT + ':' + BLUE + "%d" +
+        PURPLE + " signed in as " + BLUE + "%s" + GRAY + '.'
+
+    ),
+
+    message__resumed (
+
+      GRAY + '[' + YELLOW + "%d" + GRAY + ']' + RESET + ": " +
+        PURPLE + "Client " + BLUE + "%s" + BLACK_BRIGHT + ':' + BLUE + "%d" +
+        PURPLE + " resumed the session of " + BLUE + "%s" + GRAY + '.'
+
+    ),
+
+    message__registered (
+
+      GRAY + '[' + YELLOW + "%d" + GRAY + ']' + RESET + ": " +
+        PURPLE + "Client " + BLUE + "%s" + BLACK_BRIGHT + ':' + BLUE + "%d" +
+        PURPLE + " registered as " + BLUE + "%s" + GRAY + '.'
+
+    ),
+
+    message__published (
+
+      GRAY + '[' + YELLOW + "%d" + GRAY + ']' + RESET + ": " + PURPLE + "Client " +
+        BLUE + "%s" + PURPLE + " published a message in " + BLUE + "%s" + GRAY + '.'
+
+    ),
+
+    message__subscribed (
+
+      GRAY + '[' + YELLOW + "%d" + GRAY + ']' + RESET + ": " + PURPLE + "Client " +
+        BLUE + "%s" + PURPLE + " subscribed to topic " + BLUE + "%s" + GRAY + '.'
+
+    ),
+
+    message__replaying (
+
+      GRAY + '[' + YELLOW + "%d" + GRAY + ']' + RESET + ": " + PURPLE + "Client " +
+        BLUE + "%s" + PURPLE + " replays topic " + BLUE + "%s" + PURPLE + " from offset " +
+        BLUE + "%d" + GRAY + '.'
+
+    ),
+
+    message__snapshot_info (
+
+      GRAY + "Restored " + BLUE + "%d" + GRAY + " users and " + BLUE + "%d" + GRAY + " topics from " +
+        BLUE + "%s" + GRAY + " in " + BLUE + "%d" + GRAY + " ms."
+
+    ),
+
+    message__cluster_info (
+
+      PURPLE + "Cluster port " + BLUE + "%s" + PURPLE + ", linking with " + BLUE + "%d" + PURPLE + " peers" + GRAY + '.'
+
+    ),
+
+    message__peer_linked (
+
+      GRAY + "[" + YELLOW + "cluster" + GRAY + ']' + RESET + ": " +
+        PURPLE + "Linked with peer " + BLUE + "%s" + BLACK_BRIGHT + ':' + BLUE + "%d" + GRAY + '.'
+
+    ),
+
+    message__peer_lost (
+
+      GRAY + "[" + YELLOW + "cluster" + GRAY + ']' + RESET + ": " +
+        PURPLE + "Link with peer " + BLUE + "%s" + BLACK_BRIGHT + ':' + BLUE + "%d" + PURPLE + " was lost" + GRAY + '.'
+
+    ),
+
+    message__console_dropped (
+
+      GRAY + "The console could not keep up, " + BLUE + "%d" + GRAY + " log lines were dropped."
+
+    ),
+
     message__connection_dropped (
 
       GRAY + '[' + YELLOW + "%d" + GRAY + ']' + RESET + ": " +
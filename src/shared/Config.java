@@ -2,10 +2,18 @@ package shared;
 
 
 public class Config {
-    //TODO: Fix buffer submitting before actual data can be read due to non-growing size, actual size 128
-    public static final int   MIN_TRANS_BUFFER_SIZE = 5120;
+    // A power of two, so the buffers leased from the pool fill their size class
+    public static final int   MIN_TRANS_BUFFER_SIZE = 4096;
     public static final byte  CONSOLE_PADDING_SIZE  = 2;
     public static final short INPUT_REFRESH_MILLIS  = 300;
+    public static final int   MAX_FRAME_SIZE        = 16 * 1024 * 1024;
+    public static final int   MAX_GATHERED_FRAMES   = 64;
+    public static final int   POOL_MIN_BUFFER_SIZE  = 256;
+    public static final int   POOL_MAX_BUFFER_SIZE  = 1024 * 1024;
+    public static final int   POOL_BYTES_PER_CLASS  = 8 * 1024 * 1024;
+
+    // Falls back to the '\f' delimited Java serialization format, both peers must agree on it
+    public static final boolean LEGACY_SERIALIZATION = Boolean.getBoolean("messaging.legacySerialization");
 
     private Config() {}
 
@@ -0,0 +1,445 @@
+package shared.codec;
+
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import shared.Config;
+import shared.models.communication.BufferPool;
+import shared.models.communication.Request;
+import shared.models.communication.RequestType;
+import shared.models.communication.Response;
+import shared.models.communication.ResponseType;
+import shared.models.data.Aliased;
+import shared.models.data.Credentials;
+import shared.models.data.Cursor;
+import shared.models.data.Delivery;
+import shared.models.data.Post;
+import shared.models.data.Session;
+import shared.models.data.Stats;
+import shared.models.data.Topic;
+import shared.models.data.TopicAlias;
+import shared.models.data.User;
+import shared.models.generics.Pair;
+
+
+public class BinaryCodec implements FrameCodec {
+
+    public static final BinaryCodec INSTANCE = new BinaryCodec();
+
+    // Frame: [varint length][type tag][varint id][value], the tag has its high bit set for responses
+    private static final int RESPONSE_FLAG = 0x80;
+    private static final int MAX_VARINT_SIZE = 5;
+    // Deflate cannot expand a stream by more than this, a larger claimed length is a lie
+    private static final int MAX_DEFLATE_RATIO = 1032;
+    // Pairs are decoded recursively, a deeper frame would exhaust the stack of the reading thread
+    private static final int MAX_NESTING_DEPTH = 8;
+
+    private static final byte NULL = 0, STRING = 1, CREDENTIALS = 2, PAIR = 3, POST = 4, TOPIC = 5, CURSOR = 6, DELIVERY = 7,
+      STATS = 8, SESSION = 9, DEFLATED = 10, TOPIC_ALIAS = 11, ALIASED = 12, ALIASED_DELIVERY = 13;
+
+    // Pooled rather than kept per thread, every virtual thread would hold its own native zlib state until
+    // collected. Instances the full pool turns away are ended right away
+    private static final int ZLIB_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+    // One pool per level, changing the level of a deflater costs as much as compressing a small frame
+    private static final List<ArrayBlockingQueue<Deflater>> deflaters = IntStream.rangeClosed(0, 9)
+      .mapToObj(level -> new ArrayBlockingQueue<Deflater>(ZLIB_POOL_SIZE))
+      .toList();
+    private static final ArrayBlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(ZLIB_POOL_SIZE);
+
+    private static final RequestType[] requestTypes = RequestType.values();
+    private static final ResponseType[] responseTypes = ResponseType.values();
+    private static final Cursor.Kind[] cursorKinds = Cursor.Kind.values();
+
+    private BinaryCodec() {}
+
+    // ### Framing ### :
+
+    @Override
+    public ByteBuffer encode(Object item) throws ProtocolException {
+        var output = new Output();
+        write(output, item);
+        return output.toFrame();
+    }
+
+    // Written straight into the leased buffer, which is only replaced when the frame outgrows it
+    @Override
+    public ByteBuffer encode(Object item, BufferPool pool) throws ProtocolException {
+        var output = new Output(pool);
+        try {
+            write(output, item);
+        } catch (ProtocolException | RuntimeException e) {
+            pool.release(output.data);
+            throw e;
+        }
+        return output.toLease();
+    }
+
+    private static void write(Output output, Object item) throws ProtocolException {
+        if (item instanceof Request request) {
+            output.writeByte(request.getType().ordinal());
+            output.writeVarInt(request.getId());
+            writeValue(output, request.getPayload());
+        } else if (item instanceof Response response) {
+            output.writeByte(RESPONSE_FLAG | response.getType().ordinal());
+            output.writeVarInt(response.getId());
+            writeValue(output, response.getPayload());
+        } else throw new ProtocolException("Unsupported message " + item);
+    }
+
+    @Override
+    public Object decode(ByteBuffer in) throws ProtocolException {
+        var start = in.position();
+        var length = readFrameLength(in);
+        if (length < 0 || in.remaining() < length) {
+            in.position(start);
+            return null;
+        }
+        var frame = in.slice(in.position(), length);
+        in.position(in.position() + length);
+        try {
+            var tag = frame.get() & 0xFF;
+            var id = readVarInt(frame);
+            // Only the value of a frame as a whole may be deflated, and only the server compresses
+            var isDeflated = frame.get(frame.position()) == DEFLATED;
+            if (isDeflated && (tag & RESPONSE_FLAG) == 0)
+                throw new ProtocolException("Deflated value in a request");
+            var payload = isDeflated
+              ? readValue(inflate(frame.position(frame.position() + 1)))
+              : readValue(frame);
+            if (frame.hasRemaining())
+                throw new ProtocolException("Trailing bytes after frame payload");
+            if ((tag & RESPONSE_FLAG) != 0)
+                return new Response(responseTypes[tag & ~RESPONSE_FLAG], payload, id);
+            var request = payload == null ? new Request(requestTypes[tag]) : new Request(requestTypes[tag], payload);
+            return id == 0 ? request : request.withId(id);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new ProtocolException("Malformed frame");
+        }
+    }
+
+    // Same frame with its value replaced by [DEFLATED][varint raw length][varint length][deflate stream],
+    // null when the value is shorter than the threshold or would not shrink with the lengths counted
+    public ByteBuffer deflate(ByteBuffer frame, int threshold, int level) throws ProtocolException {
+        var in = frame.duplicate();
+        var length = readFrameLength(in);
+        if (length < 0 || in.remaining() < length)
+            throw new ProtocolException("Incomplete frame");
+        in.limit(in.position() + length);
+        var tag = in.get() & 0xFF;
+        var id = readVarInt(in);
+        var raw = in.remaining();
+        if (raw < threshold) return null;
+        var index = level < 0 ? 6 : Math.min(level, 9);
+        var pool = deflaters.get(index);
+        var deflater = pool.poll();
+        if (deflater == null)
+            deflater = new Deflater(index);
+        var compressed = new byte[raw];
+        var size = 0;
+        try {
+            deflater.setInput(in);
+            deflater.finish();
+            while (!deflater.finished() && size < compressed.length)
+                size += deflater.deflate(compressed, size, compressed.length - size);
+            if (!deflater.finished()) return null;
+        } finally {
+            deflater.reset();
+            if (!pool.offer(deflater))
+                deflater.end();
+        }
+        var output = new Output();
+        output.writeByte(tag);
+        output.writeVarInt(id);
+        var start = output.size;
+        output.writeByte(DEFLATED);
+        output.writeVarInt(raw);
+        output.writeVarInt(size);
+        output.writeBytes(compressed, size);
+        return output.size - start < raw ? output.toFrame() : null;
+    }
+
+    private static int readFrameLength(ByteBuffer in) throws ProtocolException {
+        int value = 0;
+        for (var shift = 0; shift < MAX_VARINT_SIZE * 7; shift += 7) {
+            if (!in.hasRemaining()) return -1;
+            var b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                if (value < 0 || value > Config.MAX_FRAME_SIZE)
+                    throw new ProtocolException("Frame of " + value + " bytes exceeds the size limit");
+                return value;
+            }
+        }
+        throw new ProtocolException("Malformed frame length");
+    }
+
+    // ### Values ### :
+
+    private static void writeValue(Output output, Object value) throws ProtocolException {
+        if (value == null)
+            output.writeByte(NULL);
+        else if (value instanceof String string) {
+            output.writeByte(STRING);
+            output.writeString(string);
+        } else if (value instanceof Credentials credentials) {
+            output.writeByte(CREDENTIALS);
+            output.writeString(credentials.getUsername());
+            output.writeString(credentials.getPasswordHash());
+        } else if (value instanceof Pair<?, ?> pair) {
+            output.writeByte(PAIR);
+            writeValue(output, pair.getFirst());
+            writeValue(output, pair.getSecond());
+        } else if (value instanceof Post post) {
+            output.writeByte(POST);
+            output.writeString(post.topic().getTitle());
+            output.writeString(post.author().username());
+            output.writeLong(post.createdAt().getTime());
+            output.writeLong(post.offset());
+            output.writeString(post.body());
+        } else if (value instanceof Topic topic) {
+            output.writeByte(TOPIC);
+            output.writeString(topic.getTitle());
+        } else if (value instanceof Delivery delivery && delivery.topic() == null) {
+            output.writeByte(ALIASED_DELIVERY);
+            output.writeVarInt(delivery.alias());
+            output.writeString(delivery.author());
+            output.writeLong(delivery.createdAt().getTime());
+            output.writeLong(delivery.offset());
+            output.writeString(delivery.body());
+        } else if (value instanceof Delivery delivery) {
+            output.writeByte(DELIVERY);
+            output.writeString(delivery.topic());
+            output.writeString(delivery.author());
+            output.writeLong(delivery.createdAt().getTime());
+            output.writeLong(delivery.offset());
+            output.writeString(delivery.body());
+        } else if (value instanceof Cursor cursor) {
+            output.writeByte(CURSOR);
+            output.writeString(cursor.getTopic());
+            output.writeByte(cursor.getKind().ordinal());
+            output.writeLong(cursor.getValue());
+        } else if (value instanceof Stats stats) {
+            output.writeByte(STATS);
+            output.writeVarInt(stats.values().size());
+            for (var entry : stats.values().entrySet()) {
+                output.writeString(entry.getKey());
+                output.writeLong(entry.getValue());
+            }
+        } else if (value instanceof Session session) {
+            output.writeByte(SESSION);
+            output.writeString(session.username());
+            output.writeString(session.token());
+            output.writeLong(session.expiresAt());
+        } else if (value instanceof TopicAlias alias) {
+            output.writeByte(TOPIC_ALIAS);
+            output.writeVarInt(alias.alias());
+            output.writeString(alias.topic());
+        } else if (value instanceof Aliased aliased) {
+            output.writeByte(ALIASED);
+            output.writeVarInt(aliased.alias());
+            output.writeString(aliased.body());
+        } else throw new ProtocolException("Unsupported payload " + value.getClass().getName());
+    }
+
+    private static Object readValue(ByteBuffer in) throws ProtocolException {
+        return readValue(in, 0);
+    }
+
+    private static Object readValue(ByteBuffer in, int depth) throws ProtocolException {
+        if (depth > MAX_NESTING_DEPTH)
+            throw new ProtocolException("Values nested too deeply");
+        return switch (in.get()) {
+            case NULL -> null;
+            case STRING -> readString(in);
+            case CREDENTIALS -> Credentials.fromHash(readString(in), readString(in));
+            case PAIR -> new Pair<>(readValue(in, depth + 1), readValue(in, depth + 1));
+            case POST -> {
+                var topic = new Topic(readString(in));
+                var author = new User(Credentials.fromHash(readString(in), null));
+                var createdAt = new Date(in.getLong());
+                var offset = in.getLong();
+                yield new Post(topic, readString(in), author, createdAt, offset);
+            }
+            case TOPIC -> new Topic(readString(in));
+            case DELIVERY -> new Delivery(readString(in), readString(in), in.getLong(), in.getLong(), readString(in));
+            case CURSOR -> new Cursor(readString(in), cursorKinds[in.get()], in.getLong());
+            case STATS -> {
+                var count = readVarInt(in);
+                if (count < 0 || count > in.remaining())
+                    throw new ProtocolException("Stats count out of bounds");
+                var values = new LinkedHashMap<String, Long>();
+                for (var i = 0; i < count; i++)
+                    values.put(readString(in), in.getLong());
+                yield new Stats(values);
+            }
+            case SESSION -> new Session(readString(in), readString(in), in.getLong());
+            case DEFLATED -> throw new ProtocolException("Deflated value nested in another value");
+            case TOPIC_ALIAS -> new TopicAlias(readVarInt(in), readString(in));
+            case ALIASED -> new Aliased(readVarInt(in), readString(in));
+            case ALIASED_DELIVERY -> new Delivery(readVarInt(in), readString(in), in.getLong(), in.getLong(), readString(in));
+            default -> throw new ProtocolException("Unknown payload tag");
+        };
+    }
+
+    // The output grows with what actually inflates, the claimed length only bounds it
+    private static ByteBuffer inflate(ByteBuffer in) throws ProtocolException {
+        var raw = readVarInt(in);
+        var length = readVarInt(in);
+        if (length < 0 || length > in.remaining() || raw < 0 || raw > Config.MAX_FRAME_SIZE ||
+          raw > (long) length * MAX_DEFLATE_RATIO)
+            throw new ProtocolException("Deflated value length out of bounds");
+        var inflater = inflaters.poll();
+        if (inflater == null)
+            inflater = new Inflater();
+        inflater.setInput(in.slice(in.position(), length));
+        var value = new byte[Math.min(raw, Math.max(length * 4, 256))];
+        var size = 0;
+        try {
+            while (size < raw && !inflater.finished()) {
+                if (size == value.length)
+                    value = Arrays.copyOf(value, (int) Math.min(raw, value.length * 2L));
+                var inflated = inflater.inflate(value, size, value.length - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                size += inflated;
+            }
+            if (size != raw || !inflater.finished())
+                throw new ProtocolException("Deflated value does not match its length");
+        } catch (DataFormatException e) {
+            throw new ProtocolException("Malformed deflated value");
+        } finally {
+            inflater.reset();
+            if (!inflaters.offer(inflater))
+                inflater.end();
+        }
+        in.position(in.position() + length);
+        return ByteBuffer.wrap(value, 0, size);
+    }
+
+    private static int readVarInt(ByteBuffer in) throws ProtocolException {
+        int value = 0;
+        for (var shift = 0; shift < MAX_VARINT_SIZE * 7; shift += 7) {
+            var b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new ProtocolException("Malformed varint");
+    }
+
+    private static String readString(ByteBuffer in) throws ProtocolException {
+        var length = readVarInt(in);
+        if (length < 0 || length > in.remaining())
+            throw new ProtocolException("String length out of bounds");
+        String value;
+        if (in.hasArray())
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        else {
+            var bytes = new byte[length];
+            in.get(in.position(), bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        in.position(in.position() + length);
+        return value;
+    }
+
+    // ### Output ### :
+
+    private static class Output {
+
+        // Heap memory unless a pool lends the buffers
+        private final BufferPool pool;
+        private ByteBuffer data;
+        private int size = MAX_VARINT_SIZE;
+
+        Output() {
+            pool = null;
+            data = ByteBuffer.allocate(64);
+        }
+
+        Output(BufferPool pool) {
+            this.pool = pool;
+            data = pool.acquire(Config.POOL_MIN_BUFFER_SIZE);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra <= data.capacity()) return;
+            var capacity = Math.max(data.capacity() * 2, size + extra);
+            var grown = pool == null ? ByteBuffer.allocate(capacity) : pool.acquire(capacity);
+            grown.put(0, data, 0, size);
+            if (pool != null)
+                pool.release(data);
+            data = grown;
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            data.put(size++, (byte) value);
+        }
+
+        void writeVarInt(int value) {
+            ensureCapacity(MAX_VARINT_SIZE);
+            while ((value & ~0x7F) != 0) {
+                data.put(size++, (byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            data.put(size++, (byte) value);
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(Long.BYTES);
+            data.putLong(size, value);
+            size += Long.BYTES;
+        }
+
+        void writeBytes(byte[] bytes, int length) {
+            ensureCapacity(length);
+            data.put(size, bytes, 0, length);
+            size += length;
+        }
+
+        void writeString(String value) {
+            var bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            writeBytes(bytes, bytes.length);
+        }
+
+        // The length prefix is written backwards into the reserved head so the body is never copied
+        private int prefix() {
+            var length = size - MAX_VARINT_SIZE;
+            var prefix = new byte[MAX_VARINT_SIZE];
+            var prefixSize = 0;
+            for (var value = length; ; value >>>= 7) {
+                if ((value & ~0x7F) == 0) {
+                    prefix[prefixSize++] = (byte) value;
+                    break;
+                }
+                prefix[prefixSize++] = (byte) ((value & 0x7F) | 0x80);
+            }
+            var start = MAX_VARINT_SIZE - prefixSize;
+            data.put(start, prefix, 0, prefixSize);
+            return start;
+        }
+
+        ByteBuffer toFrame() {
+            var start = prefix();
+            return data.slice(start, size - start);
+        }
+
+        ByteBuffer toLease() {
+            var start = prefix();
+            return data.limit(size).position(start);
+        }
+
+    }
+
+}
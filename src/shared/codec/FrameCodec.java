@@ -0,0 +1,26 @@
+package shared.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import shared.Config;
+import shared.models.communication.BufferPool;
+
+
+public interface FrameCodec {
+
+    ByteBuffer encode(Object item) throws IOException;
+
+    Object decode(ByteBuffer in) throws IOException;
+
+    // The frame sits between position and limit of a buffer leased from the pool, released back to it later
+    default ByteBuffer encode(Object item, BufferPool pool) throws IOException {
+        var frame = encode(item);
+        return pool.acquire(frame.remaining()).put(frame).flip();
+    }
+
+    static FrameCodec preferred() {
+        return Config.LEGACY_SERIALIZATION ? SerializationCodec.INSTANCE : BinaryCodec.INSTANCE;
+    }
+
+}
@@ -0,0 +1,39 @@
+package shared.codec;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+
+public class SerializationCodec implements FrameCodec {
+
+    public static final SerializationCodec INSTANCE = new SerializationCodec();
+
+    private static final byte DELIMITER = '\f';
+
+    private SerializationCodec() {}
+
+    @Override
+    public ByteBuffer encode(Object item) throws IOException {
+        try (var bos = new ByteArrayOutputStream();
+             var oos = new ObjectOutputStream(bos)) {
+            oos.writeObject(item);
+            oos.flush();
+            bos.write(DELIMITER);
+            return ByteBuffer.wrap(bos.toByteArray());
+        }
+    }
+
+    @Override
+    public Object decode(ByteBuffer in) {
+        for (var i = in.position(); i < in.limit(); i++) {
+            if (in.get(i) != DELIMITER) continue;
+            var frame = new byte[i - in.position()];
+            in.get(frame).get();
+            try (var ois = new ObjectInputStream(new ByteArrayInputStream(frame))) {
+                return ois.readObject();
+            } catch (IOException | ClassNotFoundException ignored) {}
+        }
+        return null;
+    }
+
+}
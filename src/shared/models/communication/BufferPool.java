@@ -0,0 +1,85 @@
+package shared.models.communication;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import shared.Config;
+
+
+// Direct buffers grouped in power of two size classes, each class retains at most POOL_BYTES_PER_CLASS
+public final class BufferPool {
+
+    public static final BufferPool SHARED = new BufferPool(
+      Config.POOL_MIN_BUFFER_SIZE, Config.POOL_MAX_BUFFER_SIZE, Config.POOL_BYTES_PER_CLASS
+    );
+
+    private final int minShift;
+    private final ConcurrentLinkedQueue<ByteBuffer>[] classes;
+    private final AtomicInteger[] retained;
+    private final int[] retainLimits;
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder reuses = new LongAdder();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public BufferPool(int minSize, int maxSize, int bytesPerClass) {
+        minShift = shiftOf(minSize);
+        var count = shiftOf(maxSize) - minShift + 1;
+        classes = new ConcurrentLinkedQueue[count];
+        retained = new AtomicInteger[count];
+        retainLimits = new int[count];
+        for (var i = 0; i < count; i++) {
+            classes[i] = new ConcurrentLinkedQueue<>();
+            retained[i] = new AtomicInteger(0);
+            retainLimits[i] = Math.max(1, bytesPerClass >> (minShift + i));
+        }
+    }
+
+    private static int shiftOf(int capacity) {
+        return capacity <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(capacity - 1);
+    }
+
+    public ByteBuffer acquire(int capacity) {
+        var index = Math.max(0, shiftOf(capacity) - minShift);
+        if (index >= classes.length) {
+            allocations.increment();
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        var buffer = classes[index].poll();
+        if (buffer != null) {
+            retained[index].decrementAndGet();
+            reuses.increment();
+            return buffer.clear();
+        }
+        allocations.increment();
+        return ByteBuffer.allocateDirect(1 << (minShift + index));
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || Integer.bitCount(buffer.capacity()) != 1) return;
+        var index = shiftOf(buffer.capacity()) - minShift;
+        if (index < 0 || index >= classes.length) return;
+        if (retained[index].incrementAndGet() > retainLimits[index]) {
+            retained[index].decrementAndGet();
+            return;
+        }
+        classes[index].offer(buffer);
+    }
+
+    public long retainedBytes() {
+        long bytes = 0;
+        for (var i = 0; i < classes.length; i++)
+            bytes += (long) retained[i].get() << (minShift + i);
+        return bytes;
+    }
+
+    public long allocations() {
+        return allocations.sum();
+    }
+
+    public long reuses() {
+        return reuses.sum();
+    }
+
+}
@@ -4,7 +4,9 @@ import java.io.Serial;
 import java.io.Serializable;
 import java.util.Map;
 
+import shared.models.data.Aliased;
 import shared.models.data.Credentials;
+import shared.models.data.Cursor;
 import shared.models.generics.Pair;
 
 
@@ -15,28 +17,57 @@ public class Request implements Serializable {
 
     private final RequestType type;
     private final Object payload;
+    // Chosen by the client, echoed in the response so requests can be pipelined, 0 when not needed
+    private final int id;
 
-    private static final Map<RequestType, Class> allowedPayloads = Map.of(
-      RequestType.Login,       Credentials.class,
-      RequestType.Register,    Credentials.class,
-      RequestType.Subscribe,   String.class,
-      RequestType.Publish,     Pair.class
+    private static final Map<RequestType, Class> allowedPayloads = Map.ofEntries(
+      Map.entry(RequestType.Login,          Credentials.class),
+      Map.entry(RequestType.Register,       Credentials.class),
+      Map.entry(RequestType.Subscribe,      String.class),
+      Map.entry(RequestType.Publish,        Pair.class),
+      Map.entry(RequestType.Replay,         Cursor.class),
+      Map.entry(RequestType.Interest,       String.class),
+      Map.entry(RequestType.Withdraw,       String.class),
+      Map.entry(RequestType.Resume,         String.class),
+      Map.entry(RequestType.Compression,    String.class),
+      Map.entry(RequestType.Aliases,        String.class),
+      Map.entry(RequestType.PublishAliased, Aliased.class)
     );
 
+    private static boolean hasPayload(RequestType type) {
+        return type != RequestType.Ping && type != RequestType.Disconnect && type != RequestType.Stats;
+    }
+
     public Request(RequestType type) throws IllegalArgumentException {
-        if (type != RequestType.Ping && type != RequestType.Disconnect)
+        if (hasPayload(type))
             throw new IllegalArgumentException("This request requires a payload");
         this.type = type;
         this.payload = null;
+        this.id = 0;
     }
 
     public Request(RequestType type, Object payload) throws IllegalArgumentException {
-        if (type == RequestType.Ping || type == RequestType.Disconnect)
+        if (!hasPayload(type))
             throw new IllegalArgumentException("This request type cannot have a payload");
         if (allowedPayloads.get(type) != payload.getClass())
             throw new IllegalArgumentException("Such payload is not allowed for this request type");
         this.type = type;
         this.payload = payload;
+        this.id = 0;
+    }
+
+    private Request(RequestType type, Object payload, int id) {
+        this.type = type;
+        this.payload = payload;
+        this.id = id;
+    }
+
+    public Request withId(int id) {
+        return new Request(type, payload, id);
+    }
+
+    public int getId() {
+        return id;
     }
 
     public RequestType getType() {
@@ -1,5 +1,6 @@
 package shared.models.communication;
 
 public enum RequestType {
-    Ping, Disconnect, Login, Register, Publish, Subscribe
+    Ping, Disconnect, Login, Register, Publish, Subscribe, Replay, Stats, Interest, Resume, Compression, Aliases,
+    PublishAliased, Withdraw
 }
@@ -14,6 +14,8 @@ public class Response implements Serializable {
 
     private final ResponseType type;
     private final Object payload;
+    // Id of the answered request, 0 for events the client did not ask for
+    private final int id;
 
 //    public static final Map<ResponseType, Class> allowedPayloads = Map.of(
 //      ResponseType.AccessDenied,         String.class,
@@ -32,8 +34,17 @@ public class Response implements Serializable {
     public Response(ResponseType type, Object payload) {//throws IllegalArgumentException {
        // if (allowedPayloads.get(type) != payload.getClass())
       //      throw new IllegalArgumentException("Such payload is not allowed for this request type");
+        this(type, payload, 0);
+    }
+
+    public Response(ResponseType type, Object payload, int id) {
         this.type = type;
         this.payload = payload;
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
     }
 
     public ResponseType getType() {
@@ -13,5 +13,11 @@ public enum ResponseType {
     TopicSubscribed,
     TopicUnsubscribed,
     PublishedMessage,
-    NewPublication
+    NewPublication,
+    ReplayCompleted,
+    PublicationShed,
+    Stats,
+    Compression,
+    Aliases,
+    TopicAlias
 }
\ No newline at end of file
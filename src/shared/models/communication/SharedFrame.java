@@ -0,0 +1,52 @@
+package shared.models.communication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import shared.codec.FrameCodec;
+
+
+public final class SharedFrame {
+
+    private final ByteBuffer data;
+    private final ByteBuffer pooled;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private SharedFrame(ByteBuffer data, ByteBuffer pooled) {
+        this.data = data.asReadOnlyBuffer();
+        this.pooled = pooled;
+    }
+
+    public static SharedFrame wrap(ByteBuffer frame) {
+        return new SharedFrame(frame, null);
+    }
+
+    public static SharedFrame encode(FrameCodec codec, Object item) throws IOException {
+        var lease = codec.encode(item, BufferPool.SHARED);
+        return new SharedFrame(lease, lease);
+    }
+
+    public int size() {
+        return data.remaining();
+    }
+
+    public SharedFrame retain() {
+        if (references.getAndIncrement() <= 0)
+            throw new IllegalStateException("Frame has already been released");
+        return this;
+    }
+
+    public void release() {
+        var left = references.decrementAndGet();
+        if (left < 0)
+            throw new IllegalStateException("Frame has already been released");
+        if (left == 0 && pooled != null)
+            BufferPool.SHARED.release(pooled);
+    }
+
+    public ByteBuffer view() {
+        return data.duplicate();
+    }
+
+}
@@ -1,151 +1,246 @@
 package shared.models.communication;
 
-import java.io.*;
+import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.BufferOverflowException;
-import java.nio.channels.SocketChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.net.SocketException;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import shared.Config;
-import shared.util.Styling;
+import shared.codec.FrameCodec;
 
 
+// Frames may be stored from any thread, reading and writing must each stay on a single thread at a time
 public class TransmissionBuffer {
 
+    private static final ThreadLocal<ByteBuffer[]> gathers =
+      ThreadLocal.withInitial(() -> new ByteBuffer[Config.MAX_GATHERED_FRAMES]);
+
     private final int minSize;
+    private final FrameCodec codec;
+
+    private final ConcurrentLinkedQueue<Entry> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingFrames = new AtomicInteger(0);
+    private final AtomicLong pendingBytes = new AtomicLong(0);
+    // Totals kept by the reading and the writing thread respectively
+    private long bytesRead = 0, bytesWritten = 0;
+    private volatile Consumer<Object> writtenListener = null;
+
+    // Borrowed from the pool while a read is in progress, null while the connection is idle
+    private ByteBuffer in = null;
+
+    // Evictable entries may be dropped until the writer claims them, whoever unlinks an entry releases its frame
+    public static final class Entry {
+
+        private static final int QUEUED = 0, WRITING = 1, DROPPED = 2;
+
+        private final SharedFrame frame;
+        private final ByteBuffer data;
+        private final Object tag;
+        private final AtomicInteger state;
+
+        private Entry(SharedFrame frame, Object tag, boolean isEvictable) {
+            this.frame = frame;
+            this.data = frame.view();
+            this.tag = tag;
+            this.state = new AtomicInteger(isEvictable ? QUEUED : WRITING);
+        }
 
-    private ByteBuffer in;
-    private ByteBuffer out;
+        public Object tag() {
+            return tag;
+        }
+
+        private boolean claim() {
+            return state.get() == WRITING || state.compareAndSet(QUEUED, WRITING);
+        }
+
+        private boolean isDropped() {
+            return state.get() == DROPPED;
+        }
+
+    }
 
-    private TransmissionBuffer(int size) {
+    private TransmissionBuffer(int size, FrameCodec codec) {
         minSize = Math.max(size, Config.MIN_TRANS_BUFFER_SIZE);
-        in = ByteBuffer.allocate(minSize);
-        out = ByteBuffer.allocate(minSize);
-        in.mark();
+        this.codec = codec;
+    }
+
+    public static TransmissionBuffer allocate(int capacity, FrameCodec codec) {
+        return new TransmissionBuffer(capacity, codec);
     }
 
     public static TransmissionBuffer allocate(int capacity) {
-        return new TransmissionBuffer(capacity);
+        return allocate(capacity, FrameCodec.preferred());
     }
 
     public static TransmissionBuffer allocate() {
         return allocate(0);
     }
 
-    private synchronized void ensureRemainingReadSpace() {
-        //TODO: Fix buffer submitting before actual data can be read due to non-growing size
-        //Styling.printError("Before: " + in.capacity());
-        if (in == null) {
-            in = ByteBuffer.allocate(minSize);
-            in.mark();
-        } else if (in.remaining() == 0) {
-            var pos = in.position();
-            in.reset();
-            var mark = in.position();
-            in.position(pos);
-            in.flip();
-            //Styling.printError("During: " + in.capacity());
-            //Styling.printError("Left: " + in.remaining());
-            in = ByteBuffer.allocate(in.capacity() * 2).put(in);
-            in.position(mark);
-            in.mark();
-            in.position(pos);
-        }
-        //Styling.printError("After: " + in.capacity());
-        //Styling.printError("ALeft: " + in.remaining());
+    public FrameCodec codec() {
+        return codec;
+    }
+
+    // Stored frames that have been neither completely written nor evicted
+    public int pendingFrames() {
+        return pendingFrames.get();
+    }
+
+    public long pendingBytes() {
+        return pendingBytes.get();
+    }
+
+    public long bytesRead() {
+        return bytesRead;
+    }
+
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    // Called on the writing thread with the tag of every tagged frame once it is completely written
+    public void onWritten(Consumer<Object> listener) {
+        writtenListener = listener;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer) {
+        var grown = BufferPool.SHARED.acquire(buffer.capacity() * 2).put(buffer.flip());
+        BufferPool.SHARED.release(buffer);
+        return grown;
     }
 
-    public synchronized boolean read(SocketChannel channel) throws IOException {
-        ensureRemainingReadSpace();
+    public boolean read(ReadableByteChannel channel) throws IOException {
+        if (in == null)
+            in = BufferPool.SHARED.acquire(minSize);
+        else if (!in.hasRemaining())
+            in = grow(in);
         var bytes = channel.read(in);
+        if (bytes > 0)
+            bytesRead += bytes;
+        if (bytes <= 0 && in.position() == 0) {
+            BufferPool.SHARED.release(in);
+            in = null;
+        }
         if (bytes == -1)
             throw new SocketException("Connection closed prematurely");
         return bytes > 0;
     }
 
-    public synchronized boolean write(SocketChannel channel) throws IOException {
-        var pos = out.position();
-        out.flip();
-        channel.write(out);
-        pos -= out.position();
-        if (!out.hasRemaining()) {
-            out.position(0);
-            return false;
+    public boolean write(GatheringByteChannel channel) throws IOException {
+        var gather = gathers.get();
+        var listener = writtenListener;
+        while (!outbound.isEmpty()) {
+            var count = 0;
+            for (var entry : outbound) {
+                if (!entry.claim()) continue;
+                gather[count++] = entry.data;
+                if (count == gather.length) break;
+            }
+            if (count > 0)
+                bytesWritten += channel.write(gather, 0, count);
+            Arrays.fill(gather, 0, count, null);
+            var drained = 0;
+            for (Entry head; (head = outbound.peek()) != null; ) {
+                if (head.isDropped()) {
+                    if (outbound.remove(head))
+                        head.frame.release();
+                    continue;
+                }
+                if (drained == count || head.data.hasRemaining()) break;
+                outbound.poll();
+                discount(head);
+                head.frame.release();
+                if (head.tag != null && listener != null)
+                    listener.accept(head.tag);
+                drained++;
+            }
+            if (drained < count) return true;
         }
-        out.limit(out.capacity() - 1);
-        out.compact();
-        out.position(pos);
-        return true;
+        return false;
     }
 
-    private byte[] getNonZeroBytes(byte[] data) {
-        List<Byte> result = new ArrayList<>(data.length);
-        for (int i = 0; i < data.length; i++) {
-            if (data[i] != 0) {
-                result.add(data[i]);
-            }
-        }
-        byte[] resultArray = new byte[result.size()];
-        for (int i = 0; i < result.size(); i++) {
-            resultArray[i] = result.get(i);
-        }
-        return resultArray;
-    }
-
-    public synchronized ArrayList<Object> retrieveObjects() {
-        //TODO: Fix buffer submitting before actual data can be read due to non-growing size
-//        StringBuilder hexString = new StringBuilder();
-//        for (byte b : in.array()) {
-//            String hex = Integer.toHexString(0xff & b);
-//            if (hex.length() == 1) hexString.append('0');
-//            hexString.append(hex);
-//        }
-//        Styling.printError(hexString.toString());
-        //var bytes = getNonZeroBytes(in.slice(0, in.position()).array());
-        //if (bytes.length > 5)
-        //    Styling.printError(new String(bytes));
+    public ArrayList<Object> retrieveObjects() throws IOException {
         var objects = new ArrayList<>();
-        var lastPos = in.position();
-        in.reset();
-        while (in.position() < lastPos)
-            if (in.get() == '\f') {
-                try (var bis = new ByteArrayInputStream(in.slice(0, in.position() - 1).array());
-                     var ois = new ObjectInputStream(bis)) {
-                    for (;;)
-                        objects.add(ois.readObject());
-                } catch (IOException | ClassNotFoundException ignored) {
-                    //Styling.printError(ignored.getMessage());
-                }
-                lastPos -= in.position();
-                in.compact();
-                in.position(0);
+        if (in == null) return objects;
+        in.flip();
+        try {
+            Object item;
+            while ((item = codec.decode(in)) != null)
+                objects.add(item);
+        } finally {
+            in.compact();
+            if (in.position() == 0) {
+                BufferPool.SHARED.release(in);
+                in = null;
             }
-        in.mark();
+        }
         return objects;
     }
 
-    public synchronized void storeObject(Object item) {
-        //Styling.printError("TransmissionBuffer: storeObject -> " + item.toString());
-        try (var bos = new ByteArrayOutputStream();
-             var oos = new ObjectOutputStream(bos)) {
-            oos.writeObject(item);
-            oos.flush();
-            bos.write('\f');
-            var data = bos.toByteArray();
-            if (out == null) out = ByteBuffer.allocate(minSize);
-            for (;;)
-                try {
-                    out.put(data);
-                    break;
-                } catch (BufferOverflowException e) {
-                    out.flip();
-                    out = ByteBuffer.allocate(out.capacity() * 2).put(out);
-                }
-        } catch (IOException ignored) {
-            //Styling.printError("TransmissionBuffer: error -> " + ignored.getMessage().toString());
+    private Entry store(SharedFrame frame, Object tag, boolean isEvictable) {
+        var entry = new Entry(frame, tag, isEvictable);
+        pendingFrames.incrementAndGet();
+        pendingBytes.addAndGet(frame.size());
+        outbound.add(entry);
+        return entry;
+    }
+
+    private void discount(Entry entry) {
+        pendingFrames.decrementAndGet();
+        pendingBytes.addAndGet(-entry.frame.size());
+    }
+
+    public void storeFrame(SharedFrame frame) {
+        store(frame.retain(), null, false);
+    }
+
+    // The returned entry stays evictable until the writer starts on it
+    public Entry storeFrame(SharedFrame frame, Object tag) {
+        return storeFrame(frame, tag, true);
+    }
+
+    // The tag reaches the written listener once the frame is written, whether it was evictable or not
+    public Entry storeFrame(SharedFrame frame, Object tag, boolean isEvictable) {
+        return store(frame.retain(), tag, isEvictable);
+    }
+
+    public void storeObject(Object item) {
+        storeObject(item, null);
+    }
+
+    public void storeObject(Object item, Object tag) {
+        try {
+            store(SharedFrame.encode(codec, item), tag, false);
+        } catch (IOException ignored) {}
+    }
+
+    public boolean evict(Entry entry) {
+        if (!entry.state.compareAndSet(Entry.QUEUED, Entry.DROPPED)) return false;
+        discount(entry);
+        if (outbound.remove(entry))
+            entry.frame.release();
+        return true;
+    }
+
+    public Entry evictOldest() {
+        for (var entry : outbound)
+            if (evict(entry)) return entry;
+        return null;
+    }
+
+    public void release() {
+        Entry entry;
+        while ((entry = outbound.poll()) != null) {
+            if (!entry.isDropped())
+                discount(entry);
+            entry.frame.release();
         }
     }
 
-}
\ No newline at end of file
+}
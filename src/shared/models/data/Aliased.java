@@ -0,0 +1,29 @@
+package shared.models.data;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+
+// A message for the topic announced under the alias
+public class Aliased implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1;
+
+    private final int alias;
+    private final String body;
+
+    public Aliased(int alias, String body) {
+        this.alias = alias;
+        this.body = body;
+    }
+
+    public int alias() {
+        return alias;
+    }
+
+    public String body() {
+        return body;
+    }
+
+}
@@ -17,11 +17,19 @@ public class Credentials implements Serializable {
     private final String passwordHash;
 
     public Credentials(String username, String password) throws RuntimeException {
+        this(username, password, false);
+    }
+
+    private Credentials(String username, String password, boolean hashed) throws RuntimeException {
         this.username = username;
-        this.passwordHash = hash(password);
+        this.passwordHash = hashed ? password : hash(password);
+    }
+
+    public static Credentials fromHash(String username, String passwordHash) {
+        return new Credentials(username, passwordHash, true);
     }
 
-    private String hash(String value) throws RuntimeException {
+    private static String hash(String value) throws RuntimeException {
         try {
             byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes());
             StringBuilder hexString = new StringBuilder();
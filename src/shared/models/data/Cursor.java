@@ -0,0 +1,50 @@
+package shared.models.data;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+
+public class Cursor implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1;
+
+    public enum Kind {
+        Offset, Timestamp, LastDelivered
+    }
+
+    private final String topic;
+    private final Kind kind;
+    private final long value;
+
+    public Cursor(String topic, Kind kind, long value) {
+        this.topic = topic;
+        this.kind = kind;
+        this.value = value;
+    }
+
+    public static Cursor fromOffset(String topic, long offset) {
+        return new Cursor(topic, Kind.Offset, offset);
+    }
+
+    public static Cursor since(String topic, long epochMillis) {
+        return new Cursor(topic, Kind.Timestamp, epochMillis);
+    }
+
+    public static Cursor resume(String topic) {
+        return new Cursor(topic, Kind.LastDelivered, 0);
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+}
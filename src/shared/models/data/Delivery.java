@@ -0,0 +1,81 @@
+package shared.models.data;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Date;
+
+
+// What subscribers receive of a post, flat so its size does not depend on the topic history
+public class Delivery implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1;
+
+    private final String topic;
+    // Stands in for the topic on connections using aliases, -1 otherwise
+    private final int alias;
+    private final String author;
+    private final long createdAt;
+    private final long offset;
+    private final String body;
+
+    public Delivery(String topic, String author, long createdAt, long offset, String body) {
+        this(topic, -1, author, createdAt, offset, body);
+    }
+
+    public Delivery(int alias, String author, long createdAt, long offset, String body) {
+        this(null, alias, author, createdAt, offset, body);
+    }
+
+    private Delivery(String topic, int alias, String author, long createdAt, long offset, String body) {
+        this.topic = topic;
+        this.alias = alias;
+        this.author = author;
+        this.createdAt = createdAt;
+        this.offset = offset;
+        this.body = body;
+    }
+
+    public static Delivery of(Post post) {
+        return new Delivery(
+          post.topic().getTitle(), post.author().username(), post.createdAt().getTime(), post.offset(), post.body()
+        );
+    }
+
+    public static Delivery aliased(Post post) {
+        return new Delivery(
+          post.topic().alias(), post.author().username(), post.createdAt().getTime(), post.offset(), post.body()
+        );
+    }
+
+    // Same delivery with the topic its alias stands for
+    public Delivery resolve(String topic) {
+        return new Delivery(topic, -1, author, createdAt, offset, body);
+    }
+
+    // Null for aliased deliveries until they are resolved
+    public String topic() {
+        return topic;
+    }
+
+    public int alias() {
+        return alias;
+    }
+
+    public String author() {
+        return author;
+    }
+
+    public Date createdAt() {
+        return new Date(createdAt);
+    }
+
+    public long offset() {
+        return offset;
+    }
+
+    public String body() {
+        return body;
+    }
+
+}
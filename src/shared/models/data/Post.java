@@ -14,12 +14,22 @@ public class Post implements Serializable {
     private String body;
     private final Date createdAt;
     private final User author;
+    private long offset;
 
     public Post(Topic topic, String body, User author) { //, ArrayList<User> viewedBy
+        this(topic, body, author, new Date());
+    }
+
+    public Post(Topic topic, String body, User author, Date createdAt) {
+        this(topic, body, author, createdAt, -1);
+    }
+
+    public Post(Topic topic, String body, User author, Date createdAt, long offset) {
         this.topic = topic;
         this.body = body;
-        this.createdAt = new Date();
+        this.createdAt = createdAt;
         this.author = author;
+        this.offset = offset;
     }
 
     public Topic topic() {
@@ -38,4 +48,13 @@ public class Post implements Serializable {
         return author;
     }
 
+    // Position of the post in its topic, -1 until the topic accepts it
+    public long offset() {
+        return offset;
+    }
+
+    void assignOffset(long offset) {
+        this.offset = offset;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+package shared.models.data;
+
+import java.io.Serializable;
+
+
+// Limits of the history a topic keeps in memory, a limit of 0 or less is unbounded
+public record Retention(long maxMessages, long maxBytes, long maxAgeMillis) implements Serializable {
+
+    public static final Retention UNBOUNDED = new Retention(0, 0, 0);
+
+    public boolean isUnbounded() {
+        return maxMessages <= 0 && maxBytes <= 0 && maxAgeMillis <= 0;
+    }
+
+}
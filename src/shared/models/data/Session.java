@@ -0,0 +1,36 @@
+package shared.models.data;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+
+// Handed out with a successful login, the token lets a reconnecting client resume without its credentials
+public class Session implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1;
+
+    private final String username;
+    private final String token;
+    private final long expiresAt;
+
+    public Session(String username, String token, long expiresAt) {
+        this.username = username;
+        this.token = token;
+        this.expiresAt = expiresAt;
+    }
+
+    public String username() {
+        return username;
+    }
+
+    public String token() {
+        return token;
+    }
+
+    // Epoch millis, resuming the session extends it
+    public long expiresAt() {
+        return expiresAt;
+    }
+
+}
@@ -0,0 +1,37 @@
+package shared.models.data;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+// Named server counters and gauges, kept in the order the server reports them
+public class Stats implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1;
+
+    private final LinkedHashMap<String, Long> values;
+
+    public Stats(Map<String, Long> values) {
+        this.values = new LinkedHashMap<>(values);
+    }
+
+    public Map<String, Long> values() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    public long get(String name) {
+        return values.getOrDefault(name, 0L);
+    }
+
+    @Override
+    public String toString() {
+        var out = new StringBuilder();
+        values.forEach((name, value) -> out.append(out.isEmpty() ? "" : ", ").append(name).append('=').append(value));
+        return out.toString();
+    }
+
+}
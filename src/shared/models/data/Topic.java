@@ -3,48 +3,171 @@ package shared.models.data;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 public class Topic implements Serializable  {
 
     @Serial
-    private static final long serialVersionUID = 1;
+    private static final long serialVersionUID = 2;
+
+    private static final int INITIAL_CAPACITY = 16;
+    // Post, date, body string and array headers, the body counts a byte per character on top
+    private static final int POST_OVERHEAD_BYTES = 96;
 
     private String title;
-    private ArrayList<Post> messages;
-    private ArrayList<User> subscribers;
+    private ConcurrentHashMap.KeySetView<User, Boolean> subscribers;
+    private Retention retention;
+    private volatile int alias = -1;
+
+    // Retained posts from firstOffset to nextOffset, the post of an offset sits at offset & (ring.length - 1)
+    private Post[] ring;
+    private long firstOffset = 0;
+    private long nextOffset = 0;
+    private long retainedBytes = 0;
+    private long evicted = 0;
 
     public Topic(String title) {
+        this(title, Retention.UNBOUNDED);
+    }
+
+    public Topic(String title, Retention retention) {
         this.title = title;
-        this.messages = new ArrayList<>();
-        this.subscribers = new ArrayList<>();
+        this.retention = retention;
+        this.ring = new Post[INITIAL_CAPACITY];
+        this.subscribers = ConcurrentHashMap.newKeySet();
     }
 
     public String getTitle() {
         return title;
     }
 
-    public void addMessage(Post post) {
-        messages.add(post);
+    // Assigned by the server, -1 until then
+    public int alias() {
+        return alias;
+    }
+
+    public void assignAlias(int alias) {
+        this.alias = alias;
+    }
+
+    public synchronized Retention getRetention() {
+        return retention;
+    }
+
+    // Count and byte limits apply right away, age limits on the next evictExpired
+    public synchronized void setRetention(Retention retention) {
+        this.retention = retention;
+        evictOverLimit();
+    }
+
+    private static long footprint(Post post) {
+        return POST_OVERHEAD_BYTES + post.body().length();
+    }
+
+    public synchronized long addMessage(Post post) {
+        post.assignOffset(nextOffset);
+        if (nextOffset - firstOffset == ring.length)
+            if (retention.maxMessages() > 0 && ring.length >= retention.maxMessages())
+                evictOldest();
+            else grow();
+        ring[(int) (nextOffset & (ring.length - 1))] = post;
+        nextOffset++;
+        retainedBytes += footprint(post);
+        evictOverLimit();
+        return post.offset();
+    }
+
+    private void grow() {
+        var size = (int) (nextOffset - firstOffset);
+        if (ring.length > 1 << 29)
+            throw new IllegalStateException("Topic " + title + " holds too many messages");
+        var grown = new Post[ring.length << 1];
+        for (var offset = firstOffset; offset < nextOffset; offset++)
+            grown[(int) (offset & (grown.length - 1))] = ring[(int) (offset & (ring.length - 1))];
+        ring = grown;
+    }
+
+    private void evictOldest() {
+        var index = (int) (firstOffset & (ring.length - 1));
+        retainedBytes -= footprint(ring[index]);
+        ring[index] = null;
+        firstOffset++;
+        evicted++;
+    }
+
+    private void evictOverLimit() {
+        while (firstOffset < nextOffset && (
+          retention.maxMessages() > 0 && nextOffset - firstOffset > retention.maxMessages() ||
+            retention.maxBytes() > 0 && retainedBytes > retention.maxBytes()
+        ))
+            evictOldest();
+    }
+
+    // Evicts at most limit posts older than the age limit, the number evicted tells whether to call again
+    public synchronized int evictExpired(long now, int limit) {
+        if (retention.maxAgeMillis() <= 0) return 0;
+        var before = now - retention.maxAgeMillis();
+        var count = 0;
+        while (count < limit && firstOffset < nextOffset &&
+          ring[(int) (firstOffset & (ring.length - 1))].createdAt().getTime() < before) {
+            evictOldest();
+            count++;
+        }
+        return count;
+    }
+
+    // Offset of the oldest retained post, earlier ones were evicted
+    public synchronized long firstOffset() {
+        return firstOffset;
+    }
+
+    public synchronized long nextOffset() {
+        return nextOffset;
+    }
+
+    public synchronized long retainedMessages() {
+        return nextOffset - firstOffset;
+    }
+
+    public synchronized long retainedBytes() {
+        return retainedBytes;
+    }
+
+    public synchronized long evictedMessages() {
+        return evicted;
+    }
+
+    // Starts at the oldest retained post when the requested ones were evicted
+    public synchronized List<Post> getMessages(long fromOffset, int limit) {
+        var from = Math.min(Math.max(fromOffset, firstOffset), nextOffset);
+        var to = Math.min(nextOffset, from + Math.max(limit, 0));
+        var posts = new ArrayList<Post>((int) (to - from));
+        for (var offset = from; offset < to; offset++)
+            posts.add(ring[(int) (offset & (ring.length - 1))]);
+        return posts;
+    }
+
+    // Offset of the first retained post created at or after the timestamp
+    public synchronized long offsetAt(long epochMillis) {
+        long low = firstOffset, high = nextOffset;
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+            if (ring[(int) (middle & (ring.length - 1))].createdAt().getTime() < epochMillis)
+                low = middle + 1;
+            else high = middle;
+        }
+        return low;
     }
 
     public void addSubscriber(User user) {
         subscribers.add(user);
     }
 
-    public ArrayList<User> getSubscribers() {
+    public Set<User> getSubscribers() {
         return subscribers;
     }
 
-    //public static void getUnseenMessages() {}
-    //package shared.models.data;
-    //
-    //import java.util.ArrayList;
-    //
-    //public class Subscription {
-    //
-    //    private Topic topic;
-    //    private ArrayList<Post> unreadMessages;
-    //
-    //}
-}
\ No newline at end of file
+}
@@ -0,0 +1,29 @@
+package shared.models.data;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+
+// Announces that the connection may refer to the topic by the alias, for publishing and in deliveries
+public class TopicAlias implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1;
+
+    private final int alias;
+    private final String topic;
+
+    public TopicAlias(int alias, String topic) {
+        this.alias = alias;
+        this.topic = topic;
+    }
+
+    public int alias() {
+        return alias;
+    }
+
+    public String topic() {
+        return topic;
+    }
+
+}
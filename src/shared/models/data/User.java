@@ -3,6 +3,10 @@ package shared.models.data;
 import java.io.Serial;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 public class User implements Serializable  {
@@ -12,10 +16,15 @@ public class User implements Serializable  {
 
     private final Credentials info;
     private final ArrayList<Topic> subscriptions;
+    private final ConcurrentHashMap<String, AtomicLong> positions;
+    // Wildcard subscriptions and the epoch millis they were made at
+    private final ConcurrentHashMap<String, Long> filters;
 
     public User(Credentials info) {
         this.info = info;
         subscriptions = new ArrayList<>();
+        positions = new ConcurrentHashMap<>();
+        filters = new ConcurrentHashMap<>();
     }
 
     public String username() {
@@ -26,13 +35,41 @@ public class User implements Serializable  {
         return info.getPasswordHash();
     }
 
-    public void addSubscription(Topic topic) {
+    public synchronized void addSubscription(Topic topic) {
         if (!subscriptions.contains(topic))
             subscriptions.add(topic);
     }
 
-    public ArrayList<Topic> getSubscriptions() {
-        return subscriptions;
+    public synchronized ArrayList<Topic> getSubscriptions() {
+        return new ArrayList<>(subscriptions);
+    }
+
+    public void addFilter(String filter) {
+        addFilter(filter, System.currentTimeMillis());
+    }
+
+    public void addFilter(String filter, long since) {
+        filters.putIfAbsent(filter, since);
+    }
+
+    public Map<String, Long> getFilters() {
+        return new HashMap<>(filters);
+    }
+
+    public Map<String, Long> getPositions() {
+        var values = new HashMap<String, Long>();
+        positions.forEach((title, position) -> values.put(title, position.get()));
+        return values;
+    }
+
+    // Null until something of the topic was delivered to this user or the user subscribed to it
+    public AtomicLong existingPosition(Topic topic) {
+        return positions.get(topic.getTitle());
+    }
+
+    // Offset of the next post of the topic this user has not been delivered yet
+    public AtomicLong position(Topic topic) {
+        return positions.computeIfAbsent(topic.getTitle(), title -> new AtomicLong(0));
     }
 
 }
\ No newline at end of file